@@ -1,18 +1,29 @@
 package project4.RMI.client;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.RMIClientSocketFactory;
 import java.rmi.server.ServerNotActiveException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
 import project4.RMI.common.ProcessRequest;
+import project4.RMI.server.ChunkStore;
 import project4.RMI.server.KVStoreInterface;
+import project4.RMI.server.ServerOverloadedException;
+import project4.RMI.server.ValueCodec;
 
 /**
  * This class represents the client for a remote method invocation (RMI) based key-value store system.
@@ -21,25 +32,39 @@ import project4.RMI.server.KVStoreInterface;
  */
 public class Client {
 
+  private static final int MAX_OVERLOAD_RETRIES = 3;
+  private static final Random random = new Random();
+  private static String hostname;
+  private static int port;
+  private static String remoteObjectName;
+  private static int serversNum;
+  private static int replicasNum;
+  private static RMIClientSocketFactory csf;
+
   /**
    * The main method to start the RMI client.
-   * @param args Command-line arguments: [hostname] [port] [remoteObjectName]
+   * @param args Command-line arguments: [hostname] [port] [remoteObjectName] [servers] [readReplicas],
+   *             with the same layout as the PaxosServerCreator: the voting servers listen from the
+   *             base port on and the read replicas right after them. The number of servers defaults
+   *             to 5 and the number of read replicas to 0.
    */
   public static void main(String[] args) {
     try {
       // Check for correct number of command-line arguments
-      if (args.length != 3) {
+      if (args.length < 3 || args.length > 5) {
         System.out.println("Time : " + System.currentTimeMillis() + " - Usage: java PaxosClient c");
         System.exit(1);
       }
 
       // Extract command-line arguments
-      String hostname = args[0];
-      int port = Integer.parseInt(args[1]);
-      String remoteObjectName = args[2];
+      hostname = args[0];
+      port = Integer.parseInt(args[1]);
+      remoteObjectName = args[2];
+      serversNum = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+      replicasNum = args.length > 4 ? Integer.parseInt(args[4]) : 0;
 
       // Custom RMIClientSocketFactory for creating client sockets
-      RMIClientSocketFactory csf = new RMIClientSocketFactory() {
+      csf = new RMIClientSocketFactory() {
         /**
          * Creates a socket with a timeout of 5 seconds for connection.
          * @param host The remote host address
@@ -66,37 +91,31 @@ public class Client {
 
       csf.createSocket(hostname, port);
 
-      // Obtain a reference to the remote object from the RMI registry
-      Random random = new Random();
-      int addition = random.nextInt(4);
-      Registry registry = LocateRegistry.getRegistry(hostname, port + addition, csf);
-      KVStoreInterface remoteObject = (KVStoreInterface) registry.lookup(remoteObjectName);
-
       // Perform pre-population of the key-value store
       for (int i = 0; i < 10; i++) {
         System.out.println("Time : " + System.currentTimeMillis() + " Starting pre-Population of key value store");
-        handleOperation("PUT key" + i + " value" + i, remoteObject);
+        handleOperation("PUT key" + i + " value" + i);
         System.out.println("Time : " + System.currentTimeMillis() + " Pre-Population of key value store complete");
       }
 
       // Perform GET operations on the key-value store
       for (int i = 0; i < 5; i++) {
         System.out.println("Time : " + System.currentTimeMillis() + " Starting GET Operation");
-        handleOperation("GET key" + i, remoteObject);
+        handleOperation("GET key" + i);
         System.out.println("Time : " + System.currentTimeMillis() + " GET Operation complete");
       }
 
       // Perform DELETE operations on the key-value store
       for (int i = 0; i < 5; i++) {
         System.out.println("Time : " + System.currentTimeMillis() + " Starting DELETE Operation");
-        handleOperation("DELETE key" + i, remoteObject);
+        handleOperation("DELETE key" + i);
         System.out.println("Time : " + System.currentTimeMillis() + " DELETE Operation complete");
       }
 
       // Perform PUT operations on the key-value store
       for (int i = 5; i < 10; i++) {
         System.out.println("Time : " + System.currentTimeMillis() + " Starting PUT Operation");
-        handleOperation("PUT key" + i + " value" + i, remoteObject);
+        handleOperation("PUT key" + i + " value" + i);
         System.out.println("Time : " + System.currentTimeMillis() + " PUT Operation complete");
       }
 
@@ -106,14 +125,10 @@ public class Client {
           Scanner sc = new Scanner(System.in);
           System.out.println("Time : " + System.currentTimeMillis() + " - Enter the operation string or enter EXIT to exit the client: ");
           String operation = sc.nextLine();
-          addition = random.nextInt(4);
-          registry = LocateRegistry.getRegistry(hostname, port + addition, csf);
-          System.out.println("Server port - " + port + addition);
-          remoteObject = (KVStoreInterface) registry.lookup(remoteObjectName);
           if (operation.equalsIgnoreCase("EXIT"))
             break;
           else if (operation.startsWith("PUT ") || operation.startsWith("GET ") || operation.startsWith("DELETE ")) {
-            handleOperation(operation, remoteObject);
+            handleOperation(operation);
           }
         } catch (RemoteException e) {
           System.out.println("Time : " + System.currentTimeMillis() + " - RemoteException occurred while processing project2.RMI client request");
@@ -130,18 +145,54 @@ public class Client {
     }
   }
 
+  /**
+   * Picks the node that serves the operation. Reads go to a random read replica when there are any,
+   * everything else goes to a random voting server.
+   *
+   * @param operation The operation to be performed on the key-value store.
+   * @return The reference to the remote object of the chosen node.
+   * @throws RemoteException   If an RMI communication-related exception occurs.
+   * @throws NotBoundException If the remote object is not bound on the chosen node.
+   */
+  private static KVStoreInterface chooseTarget(String operation) throws RemoteException, NotBoundException {
+    int targetPort;
+    if (operation.startsWith("GET") && replicasNum > 0)
+      targetPort = port + serversNum + random.nextInt(replicasNum);
+    else
+      targetPort = port + random.nextInt(serversNum);
+    System.out.println("Server port - " + targetPort);
+    Registry registry = LocateRegistry.getRegistry(hostname, targetPort, csf);
+    return (KVStoreInterface) registry.lookup(remoteObjectName);
+  }
+
   /**
    * Handles the specified operation on the key-value store by invoking the corresponding method on the remote object.
+   * If the server rejects the operation because it is overloaded, the operation is retried after the delay suggested
+   * by the server, growing with every attempt, and given up once the retries are used.
    *
    * @param operation    The operation to be performed on the key-value store (e.g., "PUT key value", "GET key", "DELETE key").
-   * @param remoteObject The reference to the remote object implementing the RemoteInterface.
    * @throws ServerNotActiveException If the server is not active during the RMI call.
    * @throws RemoteException          If an RMI communication-related exception occurs.
+   * @throws NotBoundException        If the remote object is not bound on the chosen node.
    */
-  private static void handleOperation(String operation, KVStoreInterface remoteObject)
-      throws ServerNotActiveException, RemoteException, InterruptedException {
+  private static void handleOperation(String operation)
+      throws ServerNotActiveException, RemoteException, InterruptedException, NotBoundException {
     System.out.println("Time : " + System.currentTimeMillis() + " Received operation - " + operation);
-    ProcessRequest response = processRequest(operation, remoteObject);
+    KVStoreInterface remoteObject = chooseTarget(operation);
+    ProcessRequest response;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        response = processRequest(operation, remoteObject);
+        break;
+      } catch (ServerOverloadedException e) {
+        if (attempt > MAX_OVERLOAD_RETRIES) {
+          System.out.println("Time : " + System.currentTimeMillis() + " - Operation rejected, server is still overloaded after " + MAX_OVERLOAD_RETRIES + " retries");
+          return;
+        }
+        System.out.println("Time : " + System.currentTimeMillis() + " - " + e.getMessage() + ", retrying in " + e.getRetryAfterMillis() * attempt + " ms");
+        Thread.sleep(e.getRetryAfterMillis() * attempt);
+      }
+    }
     String responseData;
     if (!response.status) {
       System.out.println("Time : " + System.currentTimeMillis() + " - Received malformed request of length " + operation.length());
@@ -158,11 +209,12 @@ public class Client {
    * @param requestData  The request data containing the operation (e.g., "PUT key value", "GET key", "DELETE key").
    * @param remoteObject The reference to the remote object implementing the RemoteInterface.
    * @return A ProcessRequest object containing the response status and message.
+   * @throws ServerOverloadedException If the server rejects the request because it is overloaded.
    * @throws RemoteException          If an RMI communication-related exception occurs.
    * @throws ServerNotActiveException If the server is not active during the RMI call.
    */
   private static ProcessRequest processRequest(String requestData, KVStoreInterface remoteObject)
-      throws RemoteException, InterruptedException {
+      throws ServerOverloadedException, RemoteException, InterruptedException {
 
     // Example: PUT (key, value)
     if (requestData.startsWith("PUT")) {
@@ -183,7 +235,8 @@ public class Client {
       if (parts.length == 2) {
         String key = parts[1];
         if (remoteObject.containsKey(key)) {
-          String value = remoteObject.get(key);
+          String reference = remoteObject.getValueReference(key);
+          String value = reference != null ? streamLargeValue(key, reference, remoteObject) : remoteObject.get(key);
           return new ProcessRequest(true, "GET process successful", "Value returned for the given Key is : " + value);
         } else {
           return new ProcessRequest(false, "Key not found in key store", "");
@@ -206,4 +259,34 @@ public class Client {
     }
     return new ProcessRequest(false, "Operation failed due to malformed input", "");
   }
+
+  /**
+   * Streams a large value back from the server one chunk at a time and decodes it with the codec of the server.
+   *
+   * @param key          The key of the large value.
+   * @param reference    The reference the value is stored as, the chunks are fetched by it.
+   * @param remoteObject The reference to the remote object implementing the RemoteInterface.
+   * @return The decoded value.
+   * @throws ServerOverloadedException If the server rejects a chunk request because it is overloaded.
+   * @throws RemoteException If an RMI communication-related exception occurs or a chunk is missing.
+   * @throws InterruptedException If the server is interrupted while admitting a chunk request.
+   */
+  private static String streamLargeValue(String key, String reference, KVStoreInterface remoteObject)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    ValueCodec codec = remoteObject.getValueCodec();
+    List<InputStream> chunks = new ArrayList<>();
+    for (int i = 0; i < ChunkStore.chunkCount(reference); i++) {
+      byte[] chunk = remoteObject.getChunk(reference, i);
+      if (chunk == null) {
+        // the value was replaced or deleted while it was streamed
+        throw new RemoteException("Chunk " + i + " of key " + key + " is missing");
+      }
+      chunks.add(new ByteArrayInputStream(chunk));
+    }
+    try (InputStream in = codec.decode(new SequenceInputStream(Collections.enumeration(chunks)))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new RemoteException("Failed to decode value of key " + key, e);
+    }
+  }
 }
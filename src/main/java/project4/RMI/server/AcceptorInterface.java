@@ -2,10 +2,12 @@ package project4.RMI.server;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Set;
 
 /**
  * The AcceptorInterface defines the remote methods to be implemented by the acceptors in the Paxos
- * consensus algorithm. It includes methods for preparing and accepting proposals.
+ * consensus algorithm. It includes methods for preparing and accepting proposals, and a heartbeat
+ * used by the failure detector.
  */
 public interface AcceptorInterface extends Remote {
 
@@ -19,11 +21,22 @@ public interface AcceptorInterface extends Remote {
   Boolean prepare(String proposalId, Operation oper) throws RemoteException;
 
   /**
-   * Accepts or rejects a proposal with the given proposal ID and value.
+   * Accepts or rejects a proposal with the given proposal ID and value. An accepted proposal is
+   * passed on to every learner.
    *
    * @param proposalId The unique ID of the proposal.
    * @param proposalValue The value of the proposal.
+   * @return ids of the learners that received the accepted proposal, null if the acceptor is down
+   *         or rejects the proposal.
    * @throws RemoteException If a remote communication error occurs.
    */
-  void accept(String proposalId, Operation proposalValue) throws RemoteException;
+  Set<Integer> accept(String proposalId, Operation proposalValue) throws RemoteException;
+
+  /**
+   * Answer a heartbeat of the failure detector.
+   *
+   * @return true if the acceptor is up, null if it is down.
+   * @throws RemoteException If a remote communication error occurs.
+   */
+  Boolean heartbeat() throws RemoteException;
 }
@@ -0,0 +1,171 @@
+package project4.RMI.server;
+
+/**
+ * Admission control for the requests of a node. Reads and writes have separate budgets, each with a
+ * concurrency limit and a bounded queue of waiting requests. A request is rejected at once when the
+ * queue is full, and after the maximum wait when no slot frees up, so callers do not pile up on the
+ * server monitor. The concurrency limit adapts to the measured latency: it grows additively while
+ * requests complete within the target latency and shrinks multiplicatively when they do not.
+ *
+ * <p>Admission does not guard against the servers deadlocking each other. A proposing server holds
+ * its own monitor while it calls prepare and accept on the other servers, which wait for their
+ * monitors. Two servers proposing to each other at the same time can therefore block forever, and
+ * their admitted writes then never complete. Once the write budget of a server is held by such
+ * writes, every further write to it is rejected as overloaded until the server is restarted.
+ */
+public class AdmissionController {
+  private final Budget reads;
+  private final Budget writes;
+
+  /**
+   * Constructor to create an AdmissionController instance.
+   * @param reads budget of the read requests
+   * @param writes budget of the write requests
+   */
+  public AdmissionController(Budget reads, Budget writes) {
+    this.reads = reads;
+    this.writes = writes;
+  }
+
+  /**
+   * Set the clock the latency of the requests is measured with.
+   * @param clock source of time
+   */
+  public void setClock(Clock clock) {
+    reads.setClock(clock);
+    writes.setClock(clock);
+  }
+
+  /**
+   * Create an AdmissionController with the default budgets.
+   * @return admission controller
+   */
+  public static AdmissionController withDefaults() {
+    return new AdmissionController(
+        new Budget("read", 64, 8, 256, 256, 100, 50),
+        new Budget("write", 8, 1, 64, 32, 1000, 500));
+  }
+
+  /**
+   * Admit a read request.
+   * @return admission time to be passed to {@link #completeRead(long)}
+   * @throws ServerOverloadedException if the read budget is exhausted
+   * @throws InterruptedException if the wait for a slot is interrupted
+   */
+  public long admitRead() throws ServerOverloadedException, InterruptedException {
+    return reads.acquire();
+  }
+
+  /**
+   * Complete an admitted read request.
+   * @param admittedAt admission time returned by {@link #admitRead()}
+   */
+  public void completeRead(long admittedAt) {
+    reads.release(admittedAt);
+  }
+
+  /**
+   * Admit a write request.
+   * @return admission time to be passed to {@link #completeWrite(long)}
+   * @throws ServerOverloadedException if the write budget is exhausted
+   * @throws InterruptedException if the wait for a slot is interrupted
+   */
+  public long admitWrite() throws ServerOverloadedException, InterruptedException {
+    return writes.acquire();
+  }
+
+  /**
+   * Complete an admitted write request.
+   * @param admittedAt admission time returned by {@link #admitWrite()}
+   */
+  public void completeWrite(long admittedAt) {
+    writes.release(admittedAt);
+  }
+
+  /**
+   * A concurrency limit with a bounded queue for one kind of request.
+   */
+  public static class Budget {
+    static final double DECREASE_FACTOR = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long maxWaitMillis;
+    private final long targetLatencyMillis;
+    private Clock clock = Clock.SYSTEM;
+    private double limit;
+    private int inFlight = 0;
+    private int queued = 0;
+
+    /**
+     * Constructor to create a Budget instance.
+     * @param name name of the budget used in the rejection messages
+     * @param initialLimit initial number of concurrent requests
+     * @param minLimit lowest number of concurrent requests
+     * @param maxLimit highest number of concurrent requests
+     * @param maxQueued number of requests that can wait for a slot
+     * @param maxWaitMillis longest time a request waits for a slot
+     * @param targetLatencyMillis latency above which the limit is decreased
+     */
+    public Budget(String name, int initialLimit, int minLimit, int maxLimit, int maxQueued,
+        long maxWaitMillis, long targetLatencyMillis) {
+      this.name = name;
+      this.limit = initialLimit;
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.maxQueued = maxQueued;
+      this.maxWaitMillis = maxWaitMillis;
+      this.targetLatencyMillis = targetLatencyMillis;
+    }
+
+    /**
+     * Set the clock the latency of the requests is measured with. The wait for a slot is a real
+     * wait, so its deadline stays on the system clock.
+     * @param clock source of time
+     */
+    synchronized void setClock(Clock clock) {
+      this.clock = clock;
+    }
+
+    synchronized long acquire() throws ServerOverloadedException, InterruptedException {
+      if (inFlight >= (int) limit) {
+        if (queued >= maxQueued)
+          throw new ServerOverloadedException("Server overloaded, " + name + " queue is full", maxWaitMillis);
+        queued++;
+        try {
+          long deadline = System.currentTimeMillis() + maxWaitMillis;
+          while (inFlight >= (int) limit) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+              throw new ServerOverloadedException("Server overloaded, " + name + " request timed out in queue", maxWaitMillis);
+            wait(remaining);
+          }
+        } finally {
+          queued--;
+        }
+      }
+      inFlight++;
+      return clock.nanoTime();
+    }
+
+    synchronized void release(long admittedAt) {
+      double latencyMillis = (clock.nanoTime() - admittedAt) / 1_000_000.0;
+      if (latencyMillis > targetLatencyMillis)
+        limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+      else
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+      inFlight--;
+      notifyAll();
+    }
+
+    /**
+     * Get the current concurrency limit.
+     * @return number of concurrent requests admitted
+     */
+    public synchronized int getLimit() {
+      return (int) limit;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package project4.RMI.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Stores large values as encoded chunks. The key-value store only keeps a small reference to the
+ * chunks of a large value, and the reference is what travels through prepare, accept and learn.
+ * A chunk that was not streamed to this node is fetched from a peer when it is first read.
+ */
+public class ChunkStore {
+  static final int LARGE_VALUE_THRESHOLD = 64 * 1024;
+  static final int CHUNK_SIZE = 256 * 1024;
+  private static final String REFERENCE_PREFIX = "\u0000chunked:";
+
+  private final ValueCodec codec;
+  private final Map<String, Map<Integer, byte[]>> chunks = new ConcurrentHashMap<>();
+  private Supplier<Collection<ChunkStoreInterface>> peers = Collections::emptyList;
+
+  /**
+   * Constructor to create a ChunkStore instance.
+   * @param codec codec used to encode the values
+   */
+  public ChunkStore(ValueCodec codec) {
+    this.codec = codec;
+  }
+
+  /**
+   * Set the nodes a missing chunk is fetched from.
+   * @param peers live view of the peers
+   */
+  void setPeers(Supplier<Collection<ChunkStoreInterface>> peers) {
+    this.peers = peers;
+  }
+
+  /**
+   * Get the codec the values are encoded with.
+   * @return codec of the store
+   */
+  ValueCodec getCodec() {
+    return codec;
+  }
+
+  /**
+   * Check if a value is large enough to be stored as chunks.
+   * @param value value to be checked
+   * @return true if the value is above the threshold
+   */
+  boolean isLarge(String value) {
+    return value != null && value.length() > LARGE_VALUE_THRESHOLD;
+  }
+
+  /**
+   * Encode a value and split it into chunks.
+   * @param value value to be split
+   * @return encoded chunks of the value
+   * @throws IOException if the value can not be encoded
+   */
+  List<byte[]> split(String value) throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    try (OutputStream out = codec.encode(encoded)) {
+      out.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+    byte[] bytes = encoded.toByteArray();
+    List<byte[]> result = new ArrayList<>();
+    for (int offset = 0; offset < bytes.length; offset += CHUNK_SIZE) {
+      byte[] chunk = new byte[Math.min(CHUNK_SIZE, bytes.length - offset)];
+      System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+      result.add(chunk);
+    }
+    return result;
+  }
+
+  /**
+   * Store one chunk of a large value.
+   * @param valueId id of the large value
+   * @param index position of the chunk
+   * @param chunk encoded bytes of the chunk
+   */
+  void storeChunk(String valueId, int index, byte[] chunk) {
+    chunks.computeIfAbsent(valueId, id -> new ConcurrentHashMap<>()).put(index, chunk);
+  }
+
+  /**
+   * Create the reference that is stored in the key-value store in place of a large value.
+   * @param valueId id of the large value
+   * @param chunkCount number of chunks of the value
+   * @return reference to the value
+   */
+  static String reference(String valueId, int chunkCount) {
+    return REFERENCE_PREFIX + valueId + ":" + chunkCount;
+  }
+
+  /**
+   * Check if a stored value is a reference to a large value.
+   * @param value stored value
+   * @return true if the value is a reference
+   */
+  static boolean isReference(String value) {
+    return value != null && value.startsWith(REFERENCE_PREFIX);
+  }
+
+  /**
+   * Get the number of chunks of a large value.
+   * @param reference reference to the value
+   * @return number of chunks, 0 if the value is not a reference
+   */
+  public static int chunkCount(String reference) {
+    if (!isReference(reference))
+      return 0;
+    return Integer.parseInt(reference.substring(reference.lastIndexOf(':') + 1));
+  }
+
+  /**
+   * Get the id of a large value from its reference.
+   * @param reference reference to the value
+   * @return id of the value
+   */
+  static String valueId(String reference) {
+    return reference.substring(REFERENCE_PREFIX.length(), reference.lastIndexOf(':'));
+  }
+
+  /**
+   * Get one chunk of a large value. A chunk that is not stored here is fetched from the first peer
+   * that has it and kept.
+   * @param reference reference to the value
+   * @param index position of the chunk
+   * @return encoded bytes of the chunk, null if no node stores the chunk
+   */
+  byte[] getChunk(String reference, int index) {
+    if (!isReference(reference))
+      return null;
+    String valueId = valueId(reference);
+    byte[] chunk = getLocalChunk(valueId, index);
+    if (chunk != null)
+      return chunk;
+    for (ChunkStoreInterface peer : peers.get()) {
+      try {
+        chunk = peer.fetchChunk(valueId, index);
+      } catch (RemoteException e) {
+        continue;
+      }
+      if (chunk != null) {
+        storeChunk(valueId, index, chunk);
+        return chunk;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get one chunk of a large value without asking the peers.
+   * @param valueId id of the large value
+   * @param index position of the chunk
+   * @return encoded bytes of the chunk, null if the chunk is not stored here
+   */
+  byte[] getLocalChunk(String valueId, int index) {
+    Map<Integer, byte[]> valueChunks = chunks.get(valueId);
+    return valueChunks == null ? null : valueChunks.get(index);
+  }
+
+  /**
+   * Read a large value back from its chunks.
+   * @param reference reference to the value
+   * @return decoded value
+   * @throws IOException if a chunk is missing or can not be decoded
+   */
+  String read(String reference) throws IOException {
+    List<InputStream> streams = new ArrayList<>();
+    for (int i = 0; i < chunkCount(reference); i++) {
+      byte[] chunk = getChunk(reference, i);
+      if (chunk == null)
+        throw new IOException("Missing chunk " + i + " of value " + valueId(reference));
+      streams.add(new ByteArrayInputStream(chunk));
+    }
+    try (InputStream in = codec.decode(new SequenceInputStream(Collections.enumeration(streams)))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Drop the chunks of a value that is no longer stored under any key.
+   * @param reference previous value of a key
+   */
+  void release(String reference) {
+    if (isReference(reference))
+      chunks.remove(valueId(reference));
+  }
+
+  /**
+   * Copy all the chunks of another store.
+   * @param other store to copy from
+   */
+  void copyFrom(ChunkStore other) {
+    for (Map.Entry<String, Map<Integer, byte[]>> entry : other.chunks.entrySet()) {
+      chunks.put(entry.getKey(), new ConcurrentHashMap<>(entry.getValue()));
+    }
+  }
+}
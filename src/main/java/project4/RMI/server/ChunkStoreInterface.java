@@ -0,0 +1,41 @@
+package project4.RMI.server;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * The ChunkStoreInterface is used by a proposer to stream the chunks of a large value to every
+ * node before the operation is proposed, so that the consensus messages only carry a reference.
+ */
+public interface ChunkStoreInterface extends Remote {
+
+  /**
+   * Store one chunk of a large value.
+   *
+   * @param valueId The unique ID of the large value.
+   * @param index Position of the chunk in the value.
+   * @param chunk Encoded bytes of the chunk.
+   * @throws RemoteException If a remote communication error occurs.
+   */
+  void storeChunk(String valueId, int index, byte[] chunk) throws RemoteException;
+
+  /**
+   * Get one chunk of a large value from this node only, so that a node missing the chunk can
+   * repair it from a peer.
+   *
+   * @param valueId The unique ID of the large value.
+   * @param index Position of the chunk in the value.
+   * @return Encoded bytes of the chunk, null if this node does not store it.
+   * @throws RemoteException If a remote communication error occurs.
+   */
+  byte[] fetchChunk(String valueId, int index) throws RemoteException;
+
+  /**
+   * Drop the chunks of a large value whose PUT was not committed. The chunks are kept if a key
+   * of this node still references the value.
+   *
+   * @param reference Reference to the large value.
+   * @throws RemoteException If a remote communication error occurs.
+   */
+  void releaseValue(String reference) throws RemoteException;
+}
@@ -0,0 +1,47 @@
+package project4.RMI.server;
+
+/**
+ * Source of time for a server. The servers use the system clock, the cluster simulator replaces it
+ * with a virtual clock so that runs are reproducible.
+ */
+public interface Clock {
+
+  /**
+   * Clock backed by the system time.
+   */
+  Clock SYSTEM = new Clock() {
+    @Override
+    public long currentTimeMillis() {
+      return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+      Thread.sleep(millis);
+    }
+  };
+
+  /**
+   * Get the current time.
+   * @return current time in milliseconds
+   */
+  long currentTimeMillis();
+
+  /**
+   * Get a high resolution time used to measure elapsed time.
+   * @return current time in nanoseconds
+   */
+  long nanoTime();
+
+  /**
+   * Wait for the given time.
+   * @param millis time to wait in milliseconds
+   * @throws InterruptedException if sleep is interrupted
+   */
+  void sleep(long millis) throws InterruptedException;
+}
@@ -0,0 +1,357 @@
+package project4.RMI.server;
+
+import java.io.PrintStream;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The ClusterSimulator runs a cluster of servers in a single process over a simulated network, to
+ * measure the consensus under latency, message loss, partitions and paused nodes. The servers,
+ * the network and the workload all draw from the same seed and the servers use the virtual clock of
+ * the network, so a run is reproducible. Since the servers send their messages one after the other,
+ * the virtual time of an operation is the sum of the latencies of its messages. The heartbeats of
+ * the failure detectors are sent between the operations and do not add to their time.
+ */
+public class ClusterSimulator {
+  static final long TIMEOUT_MS = 50;
+  static final long HEARTBEAT_INTERVAL_MS = 1000;
+  static final SimulatedNetwork.LinkConfig DEFAULT_LINK = new SimulatedNetwork.LinkConfig(1.0, 0.5, 0.005);
+
+  private final SimulatedNetwork network;
+  private final Server[] servers;
+  private final Random workload;
+  private final PrintStream out;
+  private final List<FailureDetector> detectors = new ArrayList<>();
+  private long heartbeatIntervalMillis;
+  private long nextHeartbeatMillis;
+  private final PriorityQueue<ScheduledFault> faults = new PriorityQueue<>(
+      Comparator.comparingLong((ScheduledFault fault) -> fault.atMillis).thenComparingInt(fault -> fault.sequence));
+
+  /**
+   * Constructor to create a ClusterSimulator instance.
+   * @param nodeCount number of servers
+   * @param seed seed of the network, the servers and the workload
+   * @param link configuration of the links between the servers
+   * @param out stream the fault timeline is written to
+   */
+  public ClusterSimulator(int nodeCount, long seed, SimulatedNetwork.LinkConfig link, PrintStream out)
+      throws RemoteException {
+    this.network = new SimulatedNetwork(seed, link, TIMEOUT_MS);
+    this.workload = new Random(seed + 1);
+    this.out = out;
+    this.servers = new Server[nodeCount];
+    for (int serverId = 0; serverId < nodeCount; serverId++) {
+      servers[serverId] = new Server(serverId);
+      servers[serverId].setClock(network);
+      servers[serverId].setRandom(new Random(seed + 2 + serverId));
+      // the servers log every operation, keep the output to the report
+      servers[serverId].setLogging(false);
+    }
+    // Every server reaches the others through its own links
+    for (int from = 0; from < nodeCount; from++) {
+      AcceptorInterface[] acceptors = new AcceptorInterface[nodeCount];
+      LearnerInterface[] learners = new LearnerInterface[nodeCount];
+      for (int to = 0; to < nodeCount; to++) {
+        SimulatedLink simulatedLink = new SimulatedLink(network, from, to, servers[to]);
+        acceptors[to] = simulatedLink;
+        learners[to] = simulatedLink;
+      }
+      servers[from].setAcceptors(acceptors);
+      servers[from].setLearners(learners);
+    }
+  }
+
+  /**
+   * Get the simulated network, to configure its links.
+   * @return simulated network
+   */
+  public SimulatedNetwork getNetwork() {
+    return network;
+  }
+
+  /**
+   * Enable or disable the thrifty accept phase on every server.
+   * @param thriftyAccept true to send accept to a phase 2 quorum only
+   */
+  public void setThriftyAccept(boolean thriftyAccept) {
+    for (Server server : servers) {
+      server.setThriftyAccept(thriftyAccept);
+    }
+  }
+
+  /**
+   * Set the size of the phase 2 quorum on every server.
+   * @param phase2Quorum size of the phase 2 quorum, 0 for a majority
+   */
+  public void setPhase2Quorum(int phase2Quorum) {
+    for (Server server : servers) {
+      server.setPhase2Quorum(phase2Quorum);
+    }
+  }
+
+  /**
+   * Give every server a failure detector whose heartbeats are sent on the virtual clock.
+   * @param heartbeatIntervalMillis virtual time between two heartbeat rounds
+   */
+  public void enableFailureDetectors(long heartbeatIntervalMillis) {
+    for (Server server : servers) {
+      detectors.add(server.createFailureDetector(heartbeatIntervalMillis));
+    }
+    this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    this.nextHeartbeatMillis = network.currentTimeMillis();
+  }
+
+  /**
+   * Send a round of heartbeats from every server if one is due. An operation that runs past the
+   * interval delays the next round instead of bunching the missed rounds together.
+   */
+  private void sendDueHeartbeats() {
+    if (detectors.isEmpty() || nextHeartbeatMillis > network.currentTimeMillis())
+      return;
+    network.inBackground(() -> {
+      for (FailureDetector detector : detectors) {
+        detector.sendHeartbeats();
+      }
+    });
+    nextHeartbeatMillis = network.currentTimeMillis() + heartbeatIntervalMillis;
+  }
+
+  /**
+   * Schedule a fault at a virtual time.
+   * @param atMillis virtual time of the fault
+   * @param description description written to the timeline
+   * @param action change applied to the network
+   */
+  public void schedule(long atMillis, String description, Runnable action) {
+    faults.add(new ScheduledFault(atMillis, faults.size(), description, action));
+  }
+
+  /**
+   * Apply the faults whose time has come.
+   */
+  private void applyDueFaults() {
+    while (!faults.isEmpty() && faults.peek().atMillis <= network.currentTimeMillis()) {
+      ScheduledFault fault = faults.poll();
+      fault.action.run();
+      out.println("Time : " + network.currentTimeMillis() + " ms (virtual) - " + fault.description);
+    }
+  }
+
+  /**
+   * Run a workload of PUT operations, each sent to a random server once the previous one is done.
+   * This is a single closed-loop client, so the throughput is the inverse of the commit latency and
+   * does not show how the cluster behaves under concurrent clients.
+   * @param operations number of operations
+   * @param keyCount number of distinct keys
+   * @return report of the run
+   * @throws InterruptedException if sleep is interrupted
+   */
+  public Report run(int operations, int keyCount) throws InterruptedException {
+    List<Double> latencies = new ArrayList<>();
+    int failed = 0;
+    long startNanos = network.nanoTime();
+    for (int i = 0; i < operations; i++) {
+      applyDueFaults();
+      sendDueHeartbeats();
+      int serverId = workload.nextInt(servers.length);
+      String key = "key" + workload.nextInt(keyCount);
+      long opStart = network.nanoTime();
+      boolean committed = false;
+      if (network.isPaused(serverId)) {
+        // the client times out on a paused server
+        network.advance(TIMEOUT_MS);
+      } else {
+        try {
+          committed = servers[serverId].put(key, "value" + i).startsWith("PUT operation successful");
+        } catch (ServerOverloadedException | RemoteException e) {
+          committed = false;
+        }
+      }
+      if (committed)
+        latencies.add((network.nanoTime() - opStart) / 1_000_000.0);
+      else
+        failed++;
+    }
+    applyDueFaults();
+    return new Report(operations, failed, latencies, (network.nanoTime() - startNanos) / 1_000_000.0,
+        network.getMessages(), network.getDroppedMessages(), snapshots());
+  }
+
+  /**
+   * Unexport the servers, they are only called through the simulated network.
+   * @throws NoSuchObjectException if a server is not exported
+   */
+  public void shutdown() throws NoSuchObjectException {
+    for (Server server : servers) {
+      UnicastRemoteObject.unexportObject(server, true);
+    }
+  }
+
+  /**
+   * Take a snapshot of the key-value store of every server.
+   * @return snapshots in the order of the server ids
+   */
+  private List<Map<String, String>> snapshots() {
+    List<Map<String, String>> snapshots = new ArrayList<>();
+    for (Server server : servers) {
+      snapshots.add(server.snapshot());
+    }
+    return snapshots;
+  }
+
+  /**
+   * A change to the network applied at a virtual time.
+   */
+  private static class ScheduledFault {
+    final long atMillis;
+    final int sequence;
+    final String description;
+    final Runnable action;
+
+    ScheduledFault(long atMillis, int sequence, String description, Runnable action) {
+      this.atMillis = atMillis;
+      this.sequence = sequence;
+      this.description = description;
+      this.action = action;
+    }
+  }
+
+  /**
+   * Single-client throughput, commit latency and divergence of a simulation run.
+   */
+  public static class Report {
+    final int operations;
+    final int failed;
+    final List<Double> latencies;
+    final double elapsedMillis;
+    final long messages;
+    final long droppedMessages;
+    final List<Map<String, String>> snapshots;
+
+    Report(int operations, int failed, List<Double> latencies, double elapsedMillis, long messages,
+        long droppedMessages, List<Map<String, String>> snapshots) {
+      this.operations = operations;
+      this.failed = failed;
+      this.latencies = new ArrayList<>(latencies);
+      Collections.sort(this.latencies);
+      this.elapsedMillis = elapsedMillis;
+      this.messages = messages;
+      this.droppedMessages = droppedMessages;
+      this.snapshots = snapshots;
+    }
+
+    /**
+     * Get a percentile of the commit latency.
+     * @param percentile percentile between 0 and 100
+     * @return latency in milliseconds, 0 if nothing was committed
+     */
+    double latencyPercentile(double percentile) {
+      if (latencies.isEmpty())
+        return 0.0;
+      int index = (int) Math.ceil(percentile / 100.0 * latencies.size()) - 1;
+      return latencies.get(Math.max(index, 0));
+    }
+
+    /**
+     * Count the keys on which the servers do not hold the same value.
+     * @return number of diverging keys
+     */
+    int divergentKeys() {
+      Set<String> keys = new TreeSet<>();
+      for (Map<String, String> snapshot : snapshots) {
+        keys.addAll(snapshot.keySet());
+      }
+      int divergent = 0;
+      for (String key : keys) {
+        Set<String> values = new HashSet<>();
+        for (Map<String, String> snapshot : snapshots) {
+          values.add(Objects.toString(snapshot.get(key)));
+        }
+        if (values.size() > 1)
+          divergent++;
+      }
+      return divergent;
+    }
+
+    /**
+     * Write the report.
+     * @param out stream the report is written to
+     */
+    void print(PrintStream out) {
+      int committed = operations - failed;
+      out.println("Operations : " + operations + ", committed : " + committed + ", failed : " + failed);
+      out.println(String.format("Virtual time : %.1f ms, single-client throughput : %.1f ops/s", elapsedMillis,
+          elapsedMillis > 0 ? committed * 1000.0 / elapsedMillis : 0.0));
+      out.println(String.format("Commit latency (ms) : p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+          latencyPercentile(50), latencyPercentile(90), latencyPercentile(99), latencyPercentile(100)));
+      out.println("Messages : " + messages + ", lost : " + droppedMessages);
+      out.println("Divergent keys : " + divergentKeys());
+      for (int serverId = 0; serverId < snapshots.size(); serverId++) {
+        out.println("Server " + serverId + " holds " + snapshots.get(serverId).size() + " keys");
+      }
+    }
+  }
+
+  /**
+   * The main method to run a simulation with a pause of one server and a partition of two servers.
+   *
+   * @param args Command-line arguments: [servers] [operations] [seed] [loss] [thrifty] [heartbeatMs]
+   *             [phase2Quorum], defaulting to 5, 2000, 42, the loss rate of the default link, false,
+   *             1000 and 0 for a majority. A heartbeat interval of 0 runs without failure detectors.
+   */
+  public static void main(String[] args) {
+    try {
+      int serversNum = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+      int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+      long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+      double loss = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_LINK.lossRate;
+      boolean thrifty = args.length > 4 && Boolean.parseBoolean(args[4]);
+      long heartbeatMillis = args.length > 5 ? Long.parseLong(args[5]) : HEARTBEAT_INTERVAL_MS;
+      int phase2Quorum = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+
+      PrintStream console = System.out;
+      SimulatedNetwork.LinkConfig link = new SimulatedNetwork.LinkConfig(
+          DEFAULT_LINK.latencyMillis, DEFAULT_LINK.jitterMillis, loss);
+      ClusterSimulator simulator = new ClusterSimulator(serversNum, seed, link, console);
+      simulator.setThriftyAccept(thrifty);
+      simulator.setPhase2Quorum(phase2Quorum);
+      if (heartbeatMillis > 0)
+        simulator.enableFailureDetectors(heartbeatMillis);
+      SimulatedNetwork network = simulator.getNetwork();
+      simulator.schedule(5000, "Server 1 paused for 5000 ms", () -> network.pause(1, 5000));
+      if (serversNum >= 3) {
+        Set<Integer> minority = new HashSet<>();
+        for (int serverId = serversNum - (serversNum - 1) / 2; serverId < serversNum; serverId++) {
+          minority.add(serverId);
+        }
+        simulator.schedule(20000, "Servers " + minority + " partitioned from the others", () -> network.partition(minority, serversNum));
+        simulator.schedule(25000, "Partition healed", network::heal);
+      }
+
+      console.println("Simulating " + serversNum + " servers, " + operations + " operations, seed " + seed
+          + ", loss " + loss + (thrifty ? ", thrifty accept" : ""));
+      Report report;
+      try {
+        report = simulator.run(operations, 100);
+      } finally {
+        simulator.shutdown();
+      }
+      report.print(console);
+    } catch (Exception e) {
+      System.err.println("Simulation exception: " + e.toString());
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package project4.RMI.server;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heartbeat based failure detector for the acceptors of a server. It periodically sends a heartbeat
+ * to every acceptor and computes a phi accrual suspicion level from the observed heartbeat
+ * intervals, so the timeout adapts to how regular the heartbeats of each acceptor are. An acceptor
+ * is suspected when its phi is above the threshold.
+ */
+public class FailureDetector {
+  static final double PHI_THRESHOLD = 8.0;
+  static final int WINDOW_SIZE = 100;
+  static final long MIN_STD_DEV_MILLIS = 100;
+
+  private final Map<Integer, AcceptorInterface> acceptors;
+  private final Map<Integer, HeartbeatHistory> histories = new ConcurrentHashMap<>();
+  private final long heartbeatIntervalMillis;
+  private final Clock clock;
+  private ScheduledExecutorService executor;
+
+  /**
+   * Constructor to create a FailureDetector instance.
+   * @param acceptors live view of the acceptors to be monitored
+   * @param heartbeatIntervalMillis interval between two heartbeats
+   */
+  public FailureDetector(Map<Integer, AcceptorInterface> acceptors, long heartbeatIntervalMillis) {
+    this(acceptors, heartbeatIntervalMillis, Clock.SYSTEM);
+  }
+
+  /**
+   * Constructor to create a FailureDetector instance that reads the heartbeat times from a clock.
+   * @param acceptors live view of the acceptors to be monitored
+   * @param heartbeatIntervalMillis interval between two heartbeats
+   * @param clock source of time
+   */
+  public FailureDetector(Map<Integer, AcceptorInterface> acceptors, long heartbeatIntervalMillis, Clock clock) {
+    this.acceptors = acceptors;
+    this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    this.clock = clock;
+  }
+
+  /**
+   * Start sending heartbeats to the acceptors.
+   */
+  public synchronized void start() {
+    if (executor != null)
+      return;
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "failure-detector");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleAtFixedRate(this::sendHeartbeats, 0, heartbeatIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop sending heartbeats.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Send a heartbeat to every acceptor and record the ones that answer. Acceptors that are seen for
+   * the first time start with one expected interval so that an acceptor that never answers is also
+   * suspected. Called by the heartbeat thread, or directly by the cluster simulator.
+   */
+  void sendHeartbeats() {
+    for (Map.Entry<Integer, AcceptorInterface> acceptor : acceptors.entrySet()) {
+      long now = clock.currentTimeMillis();
+      HeartbeatHistory history = histories.computeIfAbsent(acceptor.getKey(),
+          id -> new HeartbeatHistory(now, heartbeatIntervalMillis));
+      try {
+        if (Boolean.TRUE.equals(acceptor.getValue().heartbeat())) {
+          history.record(clock.currentTimeMillis());
+        }
+      } catch (RemoteException e) {
+        // a missing heartbeat is what raises the suspicion
+      }
+    }
+    histories.keySet().retainAll(acceptors.keySet());
+  }
+
+  /**
+   * Get the suspicion level of an acceptor.
+   * @param nodeId id of the acceptor
+   * @return phi of the acceptor, 0 if no heartbeat has been sent to it yet
+   */
+  public double phi(int nodeId) {
+    HeartbeatHistory history = histories.get(nodeId);
+    if (history == null)
+      return 0.0;
+    return history.phi(clock.currentTimeMillis());
+  }
+
+  /**
+   * Check if an acceptor is suspected to be down.
+   * @param nodeId id of the acceptor
+   * @return true if the phi of the acceptor is above the threshold
+   */
+  public boolean isSuspected(int nodeId) {
+    return phi(nodeId) > PHI_THRESHOLD;
+  }
+
+  /**
+   * Heartbeat arrival times of one acceptor, with the intervals kept over a sliding window.
+   */
+  private static class HeartbeatHistory {
+    private final Deque<Long> intervals = new ArrayDeque<>();
+    private long lastHeartbeat;
+    private double sum;
+    private double squaredSum;
+
+    HeartbeatHistory(long firstSeen, long expectedInterval) {
+      this.lastHeartbeat = firstSeen;
+      addInterval(expectedInterval);
+    }
+
+    synchronized void record(long now) {
+      addInterval(now - lastHeartbeat);
+      lastHeartbeat = now;
+    }
+
+    private void addInterval(long interval) {
+      if (intervals.size() == WINDOW_SIZE) {
+        long oldest = intervals.removeFirst();
+        sum -= oldest;
+        squaredSum -= (double) oldest * oldest;
+      }
+      intervals.addLast(interval);
+      sum += interval;
+      squaredSum += (double) interval * interval;
+    }
+
+    /**
+     * Compute phi with the logistic approximation of the normal distribution.
+     * @param now current time
+     * @return phi for the time passed since the last heartbeat
+     */
+    synchronized double phi(long now) {
+      double mean = sum / intervals.size();
+      double variance = squaredSum / intervals.size() - mean * mean;
+      double stdDev = Math.max(Math.sqrt(Math.max(variance, 0.0)), MIN_STD_DEV_MILLIS);
+      double y = ((now - lastHeartbeat) - mean) / stdDev;
+      double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+      if (now - lastHeartbeat > mean)
+        return -Math.log10(e / (1.0 + e));
+      return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package project4.RMI.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ValueCodec that compresses the values with gzip.
+ */
+public class GzipValueCodec implements ValueCodec {
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  public OutputStream encode(OutputStream out) throws IOException {
+    return new GZIPOutputStream(out);
+  }
+
+  @Override
+  public InputStream decode(InputStream in) throws IOException {
+    return new GZIPInputStream(in);
+  }
+}
@@ -13,36 +13,75 @@ public interface KVStoreInterface extends Remote {
    * @param key key to be inserted.
    * @param value value to be inserted
    * @return response if the value is successfully updated
+   * @throws ServerOverloadedException if the node is overloaded, the request can be retried
    * @throws RemoteException if any issue in connecting to server
    * @throws InterruptedException if sleep is interrupted
    */
-  String put(String key, String value) throws RemoteException, InterruptedException;
+  String put(String key, String value)
+      throws ServerOverloadedException, RemoteException, InterruptedException;
 
   /**
    * Delete a value from the key-value store.
    * @param key key to be deleted
    * @return response if the value is successfully deleted
+   * @throws ServerOverloadedException if the node is overloaded, the request can be retried
    * @throws RemoteException if any issue in connecting to server
    * @throws InterruptedException if sleep is interrupted
    */
-  String delete(String key) throws RemoteException, InterruptedException;
+  String delete(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException;
 
   /**
    * Get a value to a key from the key-value store.
    * @param key key to be inserted
    * @return value with respect to the key in the key-value store
+   * @throws ServerOverloadedException if the node is overloaded, the request can be retried
    * @throws RemoteException if any issue in connecting to server
    * @throws InterruptedException if sleep is interrupted
    */
-  String get(String key) throws RemoteException, InterruptedException;
+  String get(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException;
 
   /**
    * Get check if key exists in the key-value store.
    * @param key key to be inserted
    * @return if or not value exists in the key-value store
+   * @throws ServerOverloadedException if the node is overloaded, the request can be retried
    * @throws RemoteException if any issue in connecting to server
    * @throws InterruptedException if sleep is interrupted
    */
-  Boolean containsKey(String key) throws RemoteException, InterruptedException;
+  Boolean containsKey(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException;
+
+  /**
+   * Get the reference a large value is stored as, so that its chunks can be streamed back. The
+   * chunks are fetched by the reference, so a value that is replaced meanwhile is not mixed in.
+   * @param key key of the value
+   * @return reference to the chunks of the value, null if the value is not stored as chunks
+   * @throws ServerOverloadedException if the node is overloaded, the request can be retried
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  String getValueReference(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException;
+
+  /**
+   * Get one encoded chunk of a large value. The chunks are decoded with the codec of the cluster.
+   * @param reference reference to the chunks of the value
+   * @param index position of the chunk
+   * @return encoded bytes of the chunk, null if the chunk does not exist
+   * @throws ServerOverloadedException if the node is overloaded, the request can be retried
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  byte[] getChunk(String reference, int index)
+      throws ServerOverloadedException, RemoteException, InterruptedException;
+
+  /**
+   * Get the codec the chunks of the large values are encoded with.
+   * @return codec of the cluster
+   * @throws RemoteException if any issue in connecting to server
+   */
+  ValueCodec getValueCodec() throws RemoteException;
 }
 
@@ -0,0 +1,50 @@
+package project4.RMI.server;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * The MembershipInterface defines the remote methods used to reconfigure a running Paxos cluster.
+ * Every change is proposed as a regular Paxos operation so that all the voting members apply it in
+ * the same order as the key-value operations. The new node itself is created, registered and bound
+ * by the admin commands of the PaxosServerCreator, a remote call only proposes the change for a
+ * node that is already registered.
+ */
+public interface MembershipInterface extends Remote {
+
+  /**
+   * Add a voting acceptor to the cluster.
+   * @param nodeId id of the node to be added, it has to be registered in the node directory
+   * @return response if the acceptor is successfully added
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  String addAcceptor(int nodeId) throws RemoteException, InterruptedException;
+
+  /**
+   * Remove a voting acceptor from the cluster.
+   * @param nodeId id of the node to be removed
+   * @return response if the acceptor is successfully removed
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  String removeAcceptor(int nodeId) throws RemoteException, InterruptedException;
+
+  /**
+   * Add a non-voting read replica that receives the committed operations.
+   * @param nodeId id of the replica to be added, it has to be registered in the node directory
+   * @return response if the replica is successfully added
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  String addReadReplica(int nodeId) throws RemoteException, InterruptedException;
+
+  /**
+   * Remove a non-voting read replica from the cluster.
+   * @param nodeId id of the replica to be removed
+   * @return response if the replica is successfully removed
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  String removeReadReplica(int nodeId) throws RemoteException, InterruptedException;
+}
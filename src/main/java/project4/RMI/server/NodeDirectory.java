@@ -0,0 +1,61 @@
+package project4.RMI.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The NodeDirectory resolves node ids to the remote references of the nodes. Membership changes
+ * only carry the node id through Paxos, each server looks the node up here when it applies the
+ * change.
+ */
+public class NodeDirectory {
+  private final Map<Integer, AcceptorInterface> acceptors = new ConcurrentHashMap<>();
+  private final Map<Integer, LearnerInterface> learners = new ConcurrentHashMap<>();
+
+  /**
+   * Register a node that can act as an acceptor and a learner.
+   * @param nodeId id of the node
+   * @param acceptor acceptor reference of the node
+   * @param learner learner reference of the node
+   */
+  public void register(int nodeId, AcceptorInterface acceptor, LearnerInterface learner) {
+    this.acceptors.put(nodeId, acceptor);
+    this.learners.put(nodeId, learner);
+  }
+
+  /**
+   * Register a node that only learns the committed operations.
+   * @param nodeId id of the node
+   * @param learner learner reference of the node
+   */
+  public void register(int nodeId, LearnerInterface learner) {
+    this.learners.put(nodeId, learner);
+  }
+
+  /**
+   * Remove a node from the directory.
+   * @param nodeId id of the node
+   */
+  public void unregister(int nodeId) {
+    this.acceptors.remove(nodeId);
+    this.learners.remove(nodeId);
+  }
+
+  /**
+   * Get the acceptor reference of a node.
+   * @param nodeId id of the node
+   * @return acceptor reference or null if the node is unknown
+   */
+  public AcceptorInterface getAcceptor(int nodeId) {
+    return this.acceptors.get(nodeId);
+  }
+
+  /**
+   * Get the learner reference of a node.
+   * @param nodeId id of the node
+   * @return learner reference or null if the node is unknown
+   */
+  public LearnerInterface getLearner(int nodeId) {
+    return this.learners.get(nodeId);
+  }
+}
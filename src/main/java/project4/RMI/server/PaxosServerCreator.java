@@ -1,92 +1,327 @@
 package project4.RMI.server;
 
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
-import java.util.Random;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * The PaxosServerCreator class is responsible for creating and binding the Paxos servers
- * within the RMI registry. It also configures the acceptors and learners for each server.
+ * within the RMI registry. It also configures the acceptors and learners for each server, and
+ * adds or removes servers and read replicas while the cluster is running.
  */
 public class PaxosServerCreator {
 
+  private static final long HEARTBEAT_INTERVAL_MS = 1000;
+  private static final NodeDirectory directory = new NodeDirectory();
+  private static final Map<Integer, Server> servers = new ConcurrentSkipListMap<>();
+  private static final Map<Integer, ReadReplica> replicas = new ConcurrentSkipListMap<>();
+  private static final Map<Integer, Registry> registries = new ConcurrentSkipListMap<>();
+  private static int basePort;
+  private static String remoteObjectName;
+  private static boolean thriftyAccept = false;
+  private static int phase2Quorum = 0;
+
   /**
    * Create a scheduler that drops servers at random time.
-   * @param servers list of servers to be dropped
    */
-  private static void scheduler(Server[] servers) {
+  private static void scheduler() {
     // Schedule a task to run at a random delay, then repeat every X seconds
     Timer timer = new Timer();
     timer.schedule(new TimerTask() {
       @Override
       public void run() {
-        dropServer(servers);
+        dropServer();
       }
     }, 10000, 100000);
   }
 
   /**
-   * drop a server at random or just ignore when triggered.
-   * @param servers list of servers to be dropped
+   * drop a voting server at random or just ignore when triggered.
+   */
+  private static void dropServer()  {
+    List<Server> votingServers = new ArrayList<>(servers.values());
+    if (votingServers.isEmpty())
+      return;
+    Server server = votingServers.get((int) (Math.random() * votingServers.size()));
+    server.setServerDown();
+    System.out.println(System.currentTimeMillis() + " -- Server " + server.getServerId() + " is going down");
+  }
+
+  /**
+   * Create a voting server with the settings of the cluster. Every server must use the same phase 2
+   * quorum, so servers added later get the same settings.
+   * @param serverId id of the server
+   * @return the new server
+   * @throws RemoteException if the server can not be exported
+   */
+  private static Server createServer(int serverId) throws RemoteException {
+    Server server = new Server(serverId);
+    server.setNodeDirectory(directory);
+    server.setThriftyAccept(thriftyAccept);
+    server.setPhase2Quorum(phase2Quorum);
+    directory.register(serverId, server, server);
+    return server;
+  }
+
+  /**
+   * Bind the node to its RMI registry, creating the registry the first time the id is used.
+   * @param nodeId id of the node, the registry port is the base port plus the id
+   * @param node remote object of the node
+   * @throws RemoteException if the registry can not be created
+   */
+  private static void bind(int nodeId, Remote node) throws RemoteException {
+    int port = basePort + nodeId;
+    Registry registry = registries.get(nodeId);
+    if (registry == null) {
+      registry = LocateRegistry.createRegistry(port);
+      registries.put(nodeId, registry);
+    }
+    registry.rebind(remoteObjectName, node);
+    System.out.println("Node " + nodeId + " is ready at port " + port);
+  }
+
+  /**
+   * Unbind a removed node from its RMI registry and unexport it. The registry is kept, so the id
+   * can be used again.
+   * @param nodeId id of the node
+   * @param node remote object of the node
+   * @throws RemoteException if any issue with the RMI
+   */
+  private static void unbind(int nodeId, Remote node) throws RemoteException {
+    Registry registry = registries.get(nodeId);
+    if (registry != null) {
+      try {
+        registry.unbind(remoteObjectName);
+      } catch (NotBoundException e) {
+        // the node was not bound yet
+      }
+    }
+    UnicastRemoteObject.unexportObject(node, true);
+  }
+
+  /**
+   * Add a voting server to the running cluster. The membership change is proposed through the
+   * sponsor, then the new server copies the configuration and the key-value store of the sponsor.
+   * If the change is not committed, the new server is dropped again.
+   * @param serverId id of the new server
+   * @param sponsor voting server that proposes the change
+   * @return the new server, null if the change failed
+   * @throws RemoteException if any issue with the RMI
+   * @throws InterruptedException if sleep is interrupted
+   */
+  static Server addServer(int serverId, Server sponsor) throws RemoteException, InterruptedException {
+    Server server = createServer(serverId);
+    if (!sponsor.changeMembership("ADD_ACCEPTOR", serverId)) {
+      System.out.println("Time : " + System.currentTimeMillis() + " - Failed to add server " + serverId);
+      directory.unregister(serverId);
+      UnicastRemoteObject.unexportObject(server, true);
+      return null;
+    }
+    server.joinFrom(sponsor);
+    server.startFailureDetector(HEARTBEAT_INTERVAL_MS);
+    bind(serverId, server);
+    servers.put(serverId, server);
+    System.out.println("Time : " + System.currentTimeMillis() + " - Server " + serverId + " added");
+    return server;
+  }
+
+  /**
+   * Remove a voting server from the running cluster. If the change is not committed, the server
+   * stays in the cluster.
+   * @param serverId id of the server to be removed
+   * @param sponsor voting server that proposes the change
+   * @return true if the server is removed
+   * @throws RemoteException if any issue with the RMI
+   * @throws InterruptedException if sleep is interrupted
+   */
+  static boolean removeServer(int serverId, Server sponsor) throws RemoteException, InterruptedException {
+    if (!sponsor.changeMembership("REMOVE_ACCEPTOR", serverId)) {
+      System.out.println("Time : " + System.currentTimeMillis() + " - Failed to remove server " + serverId);
+      return false;
+    }
+    Server server = servers.remove(serverId);
+    directory.unregister(serverId);
+    server.stopFailureDetector();
+    unbind(serverId, server);
+    System.out.println("Time : " + System.currentTimeMillis() + " - Server " + serverId + " removed");
+    return true;
+  }
+
+  /**
+   * Add a non-voting read replica to the running cluster. Writes sent to the replica are forwarded
+   * to the voting servers. If the change is not committed, the new replica is dropped again.
+   * @param replicaId id of the new replica
+   * @param sponsor voting server that proposes the change
+   * @return the new replica, null if the change failed
+   * @throws RemoteException if any issue with the RMI
+   * @throws InterruptedException if sleep is interrupted
+   */
+  static ReadReplica addReadReplica(int replicaId, Server sponsor) throws RemoteException, InterruptedException {
+    ReadReplica replica = new ReadReplica(replicaId, directory, sponsor.getValueCodec());
+    directory.register(replicaId, replica);
+    if (!sponsor.changeMembership("ADD_REPLICA", replicaId)) {
+      System.out.println("Time : " + System.currentTimeMillis() + " - Failed to add replica " + replicaId);
+      directory.unregister(replicaId);
+      UnicastRemoteObject.unexportObject(replica, true);
+      return null;
+    }
+    replica.installSnapshot(sponsor);
+    bind(replicaId, replica);
+    replicas.put(replicaId, replica);
+    System.out.println("Time : " + System.currentTimeMillis() + " - Replica " + replicaId + " added");
+    return replica;
+  }
+
+  /**
+   * Remove a non-voting read replica from the running cluster. If the change is not committed, the
+   * replica stays in the cluster.
+   * @param replicaId id of the replica to be removed
+   * @param sponsor voting server that proposes the change
+   * @return true if the replica is removed
+   * @throws RemoteException if any issue with the RMI
+   * @throws InterruptedException if sleep is interrupted
+   */
+  static boolean removeReadReplica(int replicaId, Server sponsor) throws RemoteException, InterruptedException {
+    if (!sponsor.changeMembership("REMOVE_REPLICA", replicaId)) {
+      System.out.println("Time : " + System.currentTimeMillis() + " - Failed to remove replica " + replicaId);
+      return false;
+    }
+    ReadReplica replica = replicas.remove(replicaId);
+    directory.unregister(replicaId);
+    unbind(replicaId, replica);
+    System.out.println("Time : " + System.currentTimeMillis() + " - Replica " + replicaId + " removed");
+    return true;
+  }
+
+  /**
+   * Read membership commands from the standard input and apply them to the running cluster. The
+   * commands are ADD_SERVER, REMOVE_SERVER, ADD_REPLICA and REMOVE_REPLICA followed by a node id.
+   * New nodes are bound at the base port plus their id.
+   */
+  private static void adminLoop() {
+    Scanner sc = new Scanner(System.in);
+    while (sc.hasNextLine()) {
+      String[] parts = sc.nextLine().trim().split(" ");
+      if (parts.length != 2) {
+        System.out.println("Time : " + System.currentTimeMillis() + " - Usage: ADD_SERVER|REMOVE_SERVER|ADD_REPLICA|REMOVE_REPLICA <nodeId>");
+        continue;
+      }
+      try {
+        int nodeId = Integer.parseInt(parts[1]);
+        Server sponsor = sponsorFor(nodeId);
+        if (sponsor == null) {
+          System.out.println("Time : " + System.currentTimeMillis() + " - No voting server left to sponsor the change");
+          continue;
+        }
+        boolean known = servers.containsKey(nodeId) || replicas.containsKey(nodeId);
+        switch (parts[0].toUpperCase()) {
+          case "ADD_SERVER":
+            if (known)
+              System.out.println("Time : " + System.currentTimeMillis() + " - Node " + nodeId + " already exists");
+            else
+              addServer(nodeId, sponsor);
+            break;
+          case "REMOVE_SERVER":
+            if (servers.containsKey(nodeId))
+              removeServer(nodeId, sponsor);
+            else
+              System.out.println("Time : " + System.currentTimeMillis() + " - No server with id " + nodeId);
+            break;
+          case "ADD_REPLICA":
+            if (known)
+              System.out.println("Time : " + System.currentTimeMillis() + " - Node " + nodeId + " already exists");
+            else
+              addReadReplica(nodeId, sponsor);
+            break;
+          case "REMOVE_REPLICA":
+            if (replicas.containsKey(nodeId))
+              removeReadReplica(nodeId, sponsor);
+            else
+              System.out.println("Time : " + System.currentTimeMillis() + " - No replica with id " + nodeId);
+            break;
+          default:
+            System.out.println("Time : " + System.currentTimeMillis() + " - Unknown command " + parts[0]);
+        }
+      } catch (Exception e) {
+        System.out.println("Time : " + System.currentTimeMillis() + " - Exception occurred while changing membership with message " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Pick a voting server to propose a membership change, other than the node being changed.
+   * @param nodeId id of the node being changed
+   * @return sponsor or null if there is none
    */
-  private static void dropServer(Server[] servers)  {
-    int id = (int) (Math.random() * servers.length);
-    servers[id].setServerDown();
-    System.out.println(System.currentTimeMillis() + " -- Server " + id + " is going down");
+  private static Server sponsorFor(int nodeId) {
+    for (Server server : servers.values()) {
+      if (server.getServerId() != nodeId)
+        return server;
+    }
+    return null;
   }
 
   /**
    * The main method to launch the creation and binding process of the Paxos servers.
    *
-   * @param args Command-line arguments (unused in this context).
+   * @param args Command-line arguments: [port] [remoteObjectName] [servers] [readReplicas]
+   *             [thrifty] [phase2Quorum], the number of servers defaults to 5, the number of read
+   *             replicas to 0, the thrifty accept phase to false and the phase 2 quorum to 0 for a
+   *             majority. Once the cluster is up, membership commands are read from the standard
+   *             input.
    */
   public static void main(String[] args) {
     try {
-      int serversNum = 5;
       try {
         // Check for correct number of command-line arguments
-        if (args.length != 2) {
+        if (args.length < 2 || args.length > 6) {
           System.out.println("Time : " + System.currentTimeMillis() + " - Usage: java PaxosServer c");
           System.exit(1);
         }
 
         // Extract command-line arguments
-        int portInput = Integer.parseInt(args[0]);
-        String remoteObjectName = args[1];
-
-        Server[] servers = new Server[serversNum];
+        basePort = Integer.parseInt(args[0]);
+        remoteObjectName = args[1];
+        int serversNum = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int replicasNum = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        thriftyAccept = args.length > 4 && Boolean.parseBoolean(args[4]);
+        phase2Quorum = args.length > 5 ? Integer.parseInt(args[5]) : 0;
 
         // Create and bind servers
         for (int serverId = 0; serverId < serversNum; serverId++) {
-          int port = portInput + serverId; // Increment port for each server
-          // Create RMI registry at the specified port
-          LocateRegistry.createRegistry(port);
-
-          // Create server instance
-          servers[serverId] = new Server(serverId);
-
-          // Bind the server to the RMI registry
-          Registry registry = LocateRegistry.getRegistry(port);
-          registry.rebind(remoteObjectName, servers[serverId]);
-
-          System.out.println("Server " + serverId + " is ready at port " + port);
+          Server server = createServer(serverId);
+          servers.put(serverId, server);
+          bind(serverId, server);
         }
-        scheduler(servers);
+        scheduler();
         // Set acceptors and learners for each server
-        for (int serverId = 0; serverId < serversNum; serverId++) {
+        for (Server server : servers.values()) {
           AcceptorInterface[] acceptors = new AcceptorInterface[serversNum];
           LearnerInterface[] learners = new LearnerInterface[serversNum];
           for (int i = 0; i < serversNum; i++) {
-            acceptors[i] = servers[i];
-            learners[i] = servers[i];
+            acceptors[i] = servers.get(i);
+            learners[i] = servers.get(i);
           }
-          servers[serverId].setAcceptors(acceptors);
-          servers[serverId].setLearners(learners);
+          server.setAcceptors(acceptors);
+          server.setLearners(learners);
+          server.startFailureDetector(HEARTBEAT_INTERVAL_MS);
+        }
+
+        // Read replicas take the ids after the voting servers
+        for (int replicaId = serversNum; replicaId < serversNum + replicasNum; replicaId++) {
+          addReadReplica(replicaId, servers.get(0));
         }
+        adminLoop();
 
       } catch (Exception e) {
         System.err.println("Server exception: " + e.toString());
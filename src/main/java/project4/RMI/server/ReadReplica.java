@@ -0,0 +1,282 @@
+package project4.RMI.server;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Implementation of a non-voting read replica. The replica does not take part in prepare or accept,
+ * so it does not enlarge the write quorum. It receives the committed operations from the proposing
+ * server and serves reads from its own copy of the key-value store. Writes are forwarded to a
+ * voting server. The replica keeps its view of the voting servers up to date from the membership
+ * changes it learns, so it keeps working when the server it joined through is removed. The chunks
+ * of large values are streamed to the replica like to any other learner, a chunk the replica
+ * missed is fetched from a voting server.
+ */
+public class ReadReplica extends UnicastRemoteObject implements LearnerInterface, KVStoreInterface, ChunkStoreInterface {
+  private static final long serialVersionUID = 1L;
+  private final ConcurrentHashMap<String, String> keyValueStore = new ConcurrentHashMap<>();
+  private final ChunkStore chunkStore;
+  private final AdmissionController admissionController = AdmissionController.withDefaults();
+  private final int replicaId;
+  private final NodeDirectory nodeDirectory;
+  private final Map<Integer, KVStoreInterface> votingServers = new ConcurrentSkipListMap<>();
+  private final List<Operation> pendingOperations = new ArrayList<>();
+  private boolean snapshotInstalled = false;
+
+  /**
+   * Constructor to create a ReadReplica instance. The voting servers are known once the snapshot
+   * of a voting server is installed.
+   * @param replicaId The unique ID of this replica.
+   * @param nodeDirectory directory used to resolve the voting servers
+   * @param codec codec the large values of the cluster are encoded with
+   */
+  public ReadReplica(int replicaId, NodeDirectory nodeDirectory, ValueCodec codec) throws RemoteException {
+    this.replicaId = replicaId;
+    this.nodeDirectory = nodeDirectory;
+    this.chunkStore = new ChunkStore(codec);
+    this.chunkStore.setPeers(this::chunkPeers);
+  }
+
+  /**
+   * Forward the PUT operation to a voting server, trying the next one if a server cannot be reached.
+   * @param key key to be inserted.
+   * @param value value to be inserted
+   * @return response of the voting server
+   * @throws RemoteException if no voting server can be reached
+   * @throws InterruptedException if sleep is interrupted
+   */
+  @Override
+  public String put(String key, String value)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    RemoteException failure = new RemoteException("No voting server to forward the PUT to");
+    for (KVStoreInterface server : votingServers.values()) {
+      try {
+        return server.put(key, value);
+      } catch (RemoteException e) {
+        failure = e;
+      }
+    }
+    throw failure;
+  }
+
+  /**
+   * Forward the DELETE operation to a voting server, trying the next one if a server cannot be
+   * reached.
+   * @param key key to be deleted
+   * @return response of the voting server
+   * @throws RemoteException if no voting server can be reached
+   * @throws InterruptedException if sleep is interrupted
+   */
+  @Override
+  public String delete(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    RemoteException failure = new RemoteException("No voting server to forward the DELETE to");
+    for (KVStoreInterface server : votingServers.values()) {
+      try {
+        return server.delete(key);
+      } catch (RemoteException e) {
+        failure = e;
+      }
+    }
+    throw failure;
+  }
+
+  /**
+   * Get the voting servers that store chunks, a missing chunk is fetched from them.
+   * @return chunk stores of the voting servers
+   */
+  private List<ChunkStoreInterface> chunkPeers() {
+    List<ChunkStoreInterface> stores = new ArrayList<>();
+    for (KVStoreInterface server : votingServers.values()) {
+      if (server instanceof ChunkStoreInterface)
+        stores.add((ChunkStoreInterface) server);
+    }
+    return stores;
+  }
+
+  /**
+   * Add a voting server to the view of the replica.
+   * @param nodeId id of the voting server
+   */
+  private void addVotingServer(int nodeId) {
+    AcceptorInterface server = nodeDirectory.getAcceptor(nodeId);
+    if (server instanceof KVStoreInterface)
+      votingServers.put(nodeId, (KVStoreInterface) server);
+  }
+
+  /**
+   * Get a value to a key from the local copy of the key-value store.
+   * @param key key to be inserted
+   * @return value with respect to the key in the key-value store
+   * @throws ServerOverloadedException if the read budget of the replica is exhausted
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  @Override
+  public String get(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitRead();
+    try {
+      String value = keyValueStore.get(key);
+      if (value == null)
+        return "No entry exist for they key - "+key;
+      if (!ChunkStore.isReference(value))
+        return value;
+      return chunkStore.read(value);
+    } catch (IOException e) {
+      return "Error occurred while reading large value for key - "+key;
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
+  }
+
+  @Override
+  public Boolean containsKey(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitRead();
+    try {
+      return keyValueStore.containsKey(key);
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
+  }
+
+  @Override
+  public ValueCodec getValueCodec() throws RemoteException {
+    return chunkStore.getCodec();
+  }
+
+  @Override
+  public String getValueReference(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitRead();
+    try {
+      String value = keyValueStore.get(key);
+      return ChunkStore.isReference(value) ? value : null;
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
+  }
+
+  @Override
+  public byte[] getChunk(String reference, int index)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    // every chunk is charged, a large value costs the read budget in proportion to its size
+    long admittedAt = admissionController.admitRead();
+    try {
+      return chunkStore.getChunk(reference, index);
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
+  }
+
+  @Override
+  public void storeChunk(String valueId, int index, byte[] chunk) throws RemoteException {
+    chunkStore.storeChunk(valueId, index, chunk);
+  }
+
+  @Override
+  public byte[] fetchChunk(String valueId, int index) throws RemoteException {
+    return chunkStore.getLocalChunk(valueId, index);
+  }
+
+  @Override
+  public void releaseValue(String reference) throws RemoteException {
+    if (!keyValueStore.containsValue(reference))
+      chunkStore.release(reference);
+  }
+
+  /**
+   * Apply a committed operation. The proposing server only sends the operation once it has been
+   * learned by a majority, so no counting is needed here. Operations published before the snapshot
+   * is installed are kept and applied on top of it.
+   * @param proposalId The unique identifier for the proposal.
+   * @param acceptedValue The value that has been committed.
+   * @throws RemoteException if any issue with the RMI
+   */
+  @Override
+  public synchronized void learn(String proposalId, Operation acceptedValue) throws RemoteException {
+    if (acceptedValue == null) return;
+    if (!snapshotInstalled) {
+      pendingOperations.add(acceptedValue);
+      return;
+    }
+    apply(acceptedValue);
+  }
+
+  /**
+   * Apply a committed operation to the local copy of the key-value store.
+   * @param acceptedValue The value that has been committed.
+   */
+  private void apply(Operation acceptedValue) {
+    switch (acceptedValue.type) {
+      case "PUT":
+        String previous = keyValueStore.put(acceptedValue.key, acceptedValue.value);
+        if (previous != null && !previous.equals(acceptedValue.value))
+          chunkStore.release(previous);
+        break;
+      case "DELETE":
+        chunkStore.release(keyValueStore.remove(acceptedValue.key));
+        break;
+      case "ADD_ACCEPTOR":
+        addVotingServer(Integer.parseInt(acceptedValue.value));
+        break;
+      case "REMOVE_ACCEPTOR":
+        votingServers.remove(Integer.parseInt(acceptedValue.value));
+        break;
+      default:
+        // changes to the other replicas do not concern the replica
+        break;
+    }
+  }
+
+  /**
+   * Load a snapshot of the key-value store, the chunks of the large values and the voting servers
+   * of a voting server. The snapshot is taken after the replica was added, so the
+   * operations published since then are replayed in order on top of it, which brings back any
+   * change the snapshot missed and undoes none. The snapshot is taken before locking the replica,
+   * since the sponsor holds its own lock while it publishes to the replica.
+   * @param sponsor voting server that has already applied the addition of the replica
+   */
+  void installSnapshot(Server sponsor) {
+    Map<String, String> snapshot;
+    Set<Integer> voterIds;
+    synchronized (sponsor) {
+      snapshot = sponsor.snapshot();
+      voterIds = sponsor.getAcceptorIds();
+      // copied as they are, under the lock so that they match the references of the snapshot
+      sponsor.copyChunksTo(chunkStore);
+    }
+    synchronized (this) {
+      for (int voterId : voterIds) {
+        addVotingServer(voterId);
+      }
+      install(snapshot);
+    }
+  }
+
+  /**
+   * Load a snapshot into the local copy of the key-value store and replay the pending operations.
+   * @param snapshot snapshot of the key-value store
+   */
+  private void install(Map<String, String> snapshot) {
+    for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+      String previous = keyValueStore.put(entry.getKey(), entry.getValue());
+      if (previous != null && !previous.equals(entry.getValue()))
+        chunkStore.release(previous);
+    }
+    for (Operation operation : pendingOperations) {
+      apply(operation);
+    }
+    pendingOperations.clear();
+    snapshotInstalled = true;
+    System.out.println(System.currentTimeMillis()+" - Replica " + replicaId + " installed snapshot of " + snapshot.size() + " keys");
+  }
+}
@@ -1,29 +1,56 @@
 package project4.RMI.server;
 
+import java.io.IOException;
+import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implementation of a Server class that represents a node in a Paxos distributed consensus system.
  * This server plays the role of Proposer, Acceptor, and Learner in the Paxos algorithm, and it also handles key-value store operations.
  */
-public class Server extends UnicastRemoteObject implements ProposerInterface, AcceptorInterface, LearnerInterface, KVStoreInterface  {
+public class Server extends UnicastRemoteObject implements ProposerInterface, AcceptorInterface, LearnerInterface, KVStoreInterface, MembershipInterface, ChunkStoreInterface  {
+  static final String MEMBERSHIP_KEY = "__membership__";
   boolean isSuccess = false;
   double DIV = 2.0;
   int SERVER_DT=100;
+  int MAX_RETRIES = 3;
+  long INITIAL_BACKOFF_MS = 50;
+  double LATENCY_ALPHA = 0.2;
+  long FAILED_CALL_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
   private final ConcurrentHashMap<String, String> keyValueStore = new ConcurrentHashMap<>();
+  private final ChunkStore chunkStore;
+  private AdmissionController admissionController = AdmissionController.withDefaults();
+  private Clock clock = Clock.SYSTEM;
+  private Random random = new Random();
+  private long lastProposalTime = 0;
   private final Map<String, Pair<String, Operation>> previousEntries;
-  private AcceptorInterface[] acceptors;
-  private LearnerInterface[] learners;
+  private final Map<Integer, AcceptorInterface> acceptors = new ConcurrentSkipListMap<>();
+  private final Map<Integer, LearnerInterface> learners = new ConcurrentSkipListMap<>();
+  private final Map<Integer, LearnerInterface> readReplicas = new ConcurrentSkipListMap<>();
+  private NodeDirectory nodeDirectory;
+  private FailureDetector failureDetector;
+  private final Map<Integer, Double> acceptorLatencies = new ConcurrentHashMap<>();
+  private boolean thriftyAccept = false;
+  private int phase2Quorum = 0;
+  private boolean logging = true;
   private final int serverId;
   private final Map<String, Pair<Integer, Boolean>> learnerBook;
-  private boolean serverStatus = false;
-  private long serverDownTime = 0;
+  private volatile boolean serverStatus = false;
+  private volatile long serverDownTime = 0;
 
 
   /**
@@ -31,90 +58,537 @@ public class Server extends UnicastRemoteObject implements ProposerInterface, Ac
    * @param serverId The unique ID of this server.
    */
   public Server(int serverId) throws RemoteException {
+    this(serverId, new GzipValueCodec());
+  }
+
+  /**
+   * Constructor to create a Server instance with the codec used for large values.
+   * @param serverId The unique ID of this server.
+   * @param codec codec used to encode the large values
+   */
+  public Server(int serverId, ValueCodec codec) throws RemoteException {
     this.serverId = serverId;
+    this.chunkStore = new ChunkStore(codec);
+    this.chunkStore.setPeers(this::chunkPeers);
     this.previousEntries = new HashMap<>();
     this.learnerBook = new HashMap<>();
   }
 
   /**
-   * Set the acceptors for this server.
+   * Set the acceptors for this server. The index of an acceptor in the array is used as its node id.
    * @param acceptors Array of acceptors.
    */
   public void setAcceptors(AcceptorInterface[] acceptors) throws RemoteException {
-    this.acceptors = acceptors;
+    this.acceptors.clear();
+    for (int i = 0; i < acceptors.length; i++) {
+      this.acceptors.put(i, acceptors[i]);
+    }
   }
 
 
   /**
-   * Set the learners for this server.
+   * Set the learners for this server. The index of a learner in the array is used as its node id.
    * @param learners Array of learners.
    */
   public void setLearners(LearnerInterface[] learners) throws RemoteException {
-    this.learners = learners;
+    this.learners.clear();
+    for (int i = 0; i < learners.length; i++) {
+      this.learners.put(i, learners[i]);
+    }
+  }
+
+  /**
+   * Set the admission controller that limits the concurrent reads and writes of this server.
+   * @param admissionController admission controller
+   */
+  public void setAdmissionController(AdmissionController admissionController) {
+    this.admissionController = admissionController;
+    this.admissionController.setClock(clock);
+  }
+
+  /**
+   * Set the clock used for the proposal IDs, the retry backoff, the latency measurements and the
+   * failure detector. It has to be set before the failure detector is created.
+   * @param clock clock of the server
+   */
+  public void setClock(Clock clock) {
+    this.clock = clock;
+    this.admissionController.setClock(clock);
+  }
+
+  /**
+   * Set the random source used for the jitter of the retry backoff and the ids of large values.
+   * @param random random source of the server
+   */
+  public void setRandom(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Set the directory used to resolve the nodes named by membership changes.
+   * @param nodeDirectory directory of the nodes
+   */
+  public void setNodeDirectory(NodeDirectory nodeDirectory) {
+    this.nodeDirectory = nodeDirectory;
+  }
+
+  /**
+   * Start the failure detector that sends heartbeats to the acceptors of this server. The proposer
+   * skips the acceptors the detector suspects.
+   * @param heartbeatIntervalMillis interval between two heartbeats
+   */
+  public synchronized void startFailureDetector(long heartbeatIntervalMillis) {
+    createFailureDetector(heartbeatIntervalMillis).start();
+  }
+
+  /**
+   * Stop the heartbeats of the failure detector, if it was started.
+   */
+  public synchronized void stopFailureDetector() {
+    if (failureDetector != null)
+      failureDetector.stop();
+  }
+
+  /**
+   * Create the failure detector of this server without starting its heartbeat thread, so that the
+   * caller can send the heartbeats itself.
+   * @param heartbeatIntervalMillis interval between two heartbeats
+   * @return failure detector of this server
+   */
+  synchronized FailureDetector createFailureDetector(long heartbeatIntervalMillis) {
+    if (failureDetector == null) {
+      failureDetector = new FailureDetector(acceptors, heartbeatIntervalMillis, clock);
+    }
+    return failureDetector;
+  }
+
+  /**
+   * Enable or disable the thrifty accept phase. When enabled, the proposer sends accept only to a
+   * phase 2 quorum of the fastest acceptors that promised, and contacts the others only if the
+   * proposal is not committed by them.
+   * @param thriftyAccept true to enable the thrifty accept phase
+   */
+  public void setThriftyAccept(boolean thriftyAccept) {
+    this.thriftyAccept = thriftyAccept;
+  }
+
+  /**
+   * Set the size of the phase 2 quorum. The phase 1 quorum is sized so that the two quorums always
+   * intersect. All the servers of the cluster must use the same value, since the learners commit
+   * once a phase 2 quorum has accepted.
+   * @param phase2Quorum size of the phase 2 quorum, 0 for a majority
+   */
+  public void setPhase2Quorum(int phase2Quorum) {
+    this.phase2Quorum = phase2Quorum;
+  }
+
+  /**
+   * Turn the log of this server on or off, for example to keep a simulation quiet.
+   * @param logging true to log the operations of the server
+   */
+  public void setLogging(boolean logging) {
+    this.logging = logging;
+  }
+
+  /**
+   * Write a timestamped message to the log of the server, unless logging is turned off.
+   * @param message message to be logged
+   */
+  private void log(String message) {
+    if(logging)
+      System.out.println(System.currentTimeMillis()+" - " + message);
+  }
+
+  /**
+   * Check if the failure detector suspects an acceptor.
+   * @param nodeId id of the acceptor
+   * @return true if the acceptor is suspected, false if it is not or there's no failure detector
+   */
+  private boolean isSuspected(int nodeId) {
+    return failureDetector != null && failureDetector.isSuspected(nodeId);
+  }
+
+  /**
+   * Copy the membership and the key-value store of a voting server. Used by a node that has just
+   * been added to the cluster, since it does not learn the change that added it.
+   * @param sponsor voting server that has already applied the membership change
+   */
+  synchronized void joinFrom(Server sponsor) {
+    synchronized (sponsor) {
+      this.acceptors.putAll(sponsor.acceptors);
+      this.learners.putAll(sponsor.learners);
+      this.readReplicas.putAll(sponsor.readReplicas);
+      this.keyValueStore.putAll(sponsor.keyValueStore);
+      this.chunkStore.copyFrom(sponsor.chunkStore);
+      this.nodeDirectory = sponsor.nodeDirectory;
+    }
+  }
+
+  /**
+   * Get the ids of the voting acceptors this server currently knows.
+   * @return ids of the acceptors
+   */
+  synchronized Set<Integer> getAcceptorIds() {
+    return new TreeSet<>(this.acceptors.keySet());
   }
 
   /**
-   * insert or update a value into the key-value store.
+   * Take a copy of the key-value store. Large values stay references to their chunks, which are
+   * copied with {@link #copyChunksTo(ChunkStore)}.
+   * @return snapshot of the key-value store
+   */
+  synchronized Map<String, String> snapshot() {
+    return new HashMap<>(keyValueStore);
+  }
+
+  /**
+   * Copy the chunks of the large values this server stores into another chunk store.
+   * @param target chunk store to copy to
+   */
+  synchronized void copyChunksTo(ChunkStore target) {
+    target.copyFrom(this.chunkStore);
+  }
+
+  /**
+   * insert or update a value into the key-value store. The write has to be admitted before it
+   * waits for the server monitor.
    * @param key key to be inserted.
    * @param value value to be inserted
    * @return response if the value is successfully updated
+   * @throws ServerOverloadedException if the write budget of the server is exhausted
    * @throws RemoteException if any issue in connecting to server
    * @throws InterruptedException if sleep is interrupted
    */
   @Override
-  public synchronized String put(String key, String value)
+  public String put(String key, String value)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitWrite();
+    try {
+      return proposePut(key, value);
+    } finally {
+      admissionController.completeWrite(admittedAt);
+    }
+  }
+
+  /**
+   * Propose a PUT operation, streaming the chunks first if the value is large.
+   * @param key key to be inserted.
+   * @param value value to be inserted
+   * @return response if the value is successfully updated
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  private String proposePut(String key, String value)
       throws RemoteException, InterruptedException {
-    isSuccess = false;
-    proposeOperation(new Operation("PUT", key, value));
-    if (isSuccess)
+    if (chunkStore.isLarge(value)) {
+      String reference = streamLargeValue(value);
+      if (reference != null && proposeOperation(new Operation("PUT", key, reference)))
+        return "PUT operation successful for key - "+ key +" with value of length - "+value.length();
+      if (reference != null)
+        releaseEverywhere(reference);
+      return "Error occurred during PUT operation for key - "+key;
+    }
+    if (proposeOperation(new Operation("PUT", key, value)))
       return "PUT operation successful for key - "+ key +" with value - "+value;
     else
       return "Error occurred during PUT operation for key - "+key;
   }
 
   /**
-   * Delete a value from the key-value store.
+   * Compress a large value, split it into chunks and stream the chunks once to every learner and
+   * read replica. Only the returned reference is proposed. A phase 2 quorum of the voting servers
+   * has to store all the chunks, the nodes that missed some fetch them from a peer on read.
+   * @param value large value to be stored
+   * @return reference to the chunks of the value, null if too few servers stored the chunks
+   * @throws RemoteException if the value can not be encoded
+   */
+  private String streamLargeValue(String value) throws RemoteException {
+    // derived from the clock and the random source so that a simulated run can be replayed
+    String valueId = serverId + "-" + clock.currentTimeMillis() + "-" + Long.toHexString(random.nextLong());
+    List<byte[]> chunks;
+    try {
+      chunks = chunkStore.split(value);
+    } catch (IOException e) {
+      throw new RemoteException("Failed to encode value " + valueId, e);
+    }
+    String reference = ChunkStore.reference(valueId, chunks.size());
+    List<Map.Entry<Integer, LearnerInterface>> targets = new ArrayList<>(this.learners.entrySet());
+    targets.addAll(this.readReplicas.entrySet());
+    int stored = 0;
+    for (Map.Entry<Integer, LearnerInterface> target : targets) {
+      if (!(target.getValue() instanceof ChunkStoreInterface))
+        continue;
+      ChunkStoreInterface store = (ChunkStoreInterface) target.getValue();
+      try {
+        for (int i = 0; i < chunks.size(); i++) {
+          store.storeChunk(valueId, i, chunks.get(i));
+        }
+        if (this.acceptors.containsKey(target.getKey()))
+          stored++;
+      } catch (RemoteException e) {
+        log("Failed to stream value " + valueId + " to node " + target.getKey() + " with message " + e.getMessage());
+      }
+    }
+    if (stored < phase2QuorumSize(this.acceptors.size())) {
+      log("Only " + stored + " servers stored value " + valueId + ", not proposing it");
+      releaseEverywhere(reference);
+      return null;
+    }
+    return reference;
+  }
+
+  /**
+   * Drop the chunks of a large value that was not committed, here and on every learner and read
+   * replica.
+   * @param reference reference to the value
+   * @throws RemoteException if any issue with the RMI
+   */
+  private void releaseEverywhere(String reference) throws RemoteException {
+    releaseValue(reference);
+    for (ChunkStoreInterface store : chunkPeers()) {
+      try {
+        store.releaseValue(reference);
+      } catch (RemoteException e) {
+        log("Failed to release value " + ChunkStore.valueId(reference) + " with message " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Get the learners and read replicas that store chunks, other than this server.
+   * @return chunk stores of the other nodes
+   */
+  private Collection<ChunkStoreInterface> chunkPeers() {
+    List<LearnerInterface> nodes = new ArrayList<>(this.learners.values());
+    nodes.addAll(this.readReplicas.values());
+    List<ChunkStoreInterface> stores = new ArrayList<>();
+    for (LearnerInterface node : nodes) {
+      if (node instanceof ChunkStoreInterface && node != this)
+        stores.add((ChunkStoreInterface) node);
+    }
+    return stores;
+  }
+
+  /**
+   * Store one chunk of a large value streamed by a proposer. Not synchronized, so streaming does
+   * not wait for the proposal this server may be running.
+   * @param valueId The unique ID of the large value.
+   * @param index Position of the chunk in the value.
+   * @param chunk Encoded bytes of the chunk.
+   * @throws RemoteException if any issue with the RMI
+   */
+  @Override
+  public void storeChunk(String valueId, int index, byte[] chunk) throws RemoteException {
+    chunkStore.storeChunk(valueId, index, chunk);
+  }
+
+  @Override
+  public byte[] fetchChunk(String valueId, int index) throws RemoteException {
+    return chunkStore.getLocalChunk(valueId, index);
+  }
+
+  @Override
+  public void releaseValue(String reference) throws RemoteException {
+    if (!keyValueStore.containsValue(reference))
+      chunkStore.release(reference);
+  }
+
+  @Override
+  public ValueCodec getValueCodec() throws RemoteException {
+    return chunkStore.getCodec();
+  }
+
+  @Override
+  public String getValueReference(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitRead();
+    try {
+      String value = keyValueStore.get(key);
+      return ChunkStore.isReference(value) ? value : null;
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
+  }
+
+  @Override
+  public byte[] getChunk(String reference, int index)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    // every chunk is charged, a large value costs the read budget in proportion to its size
+    long admittedAt = admissionController.admitRead();
+    try {
+      return chunkStore.getChunk(reference, index);
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
+  }
+
+  /**
+   * Read a stored value back, following the reference of a large value.
+   * @param value stored value
+   * @return the value itself or the large value it references
+   * @throws IOException if the chunks of a large value can not be read
+   */
+  private String resolve(String value) throws IOException {
+    if (ChunkStore.isReference(value))
+      return chunkStore.read(value);
+    return value;
+  }
+
+  /**
+   * Delete a value from the key-value store. The write has to be admitted before it waits for the
+   * server monitor.
    * @param key key to be deleted
    * @return response if the value is successfully deleted
+   * @throws ServerOverloadedException if the write budget of the server is exhausted
    * @throws RemoteException if any issue in connecting to server
    * @throws InterruptedException if sleep is interrupted
    */
   @Override
-  public synchronized String delete(String key) throws RemoteException, InterruptedException {
-    isSuccess = false;
-    proposeOperation(new Operation("DELETE", key, null));
-    if (isSuccess)
+  public String delete(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitWrite();
+    try {
+      return proposeDelete(key);
+    } finally {
+      admissionController.completeWrite(admittedAt);
+    }
+  }
+
+  /**
+   * Propose a DELETE operation.
+   * @param key key to be deleted
+   * @return response if the value is successfully deleted
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  private String proposeDelete(String key) throws RemoteException, InterruptedException {
+    if (proposeOperation(new Operation("DELETE", key, null)))
       return "DELETE operation successful for key - "+ key;
     else
       return "Error occurred during DELETE operation for key - "+key;
   }
 
   /**
-   * Get a value to a key from the key-value store.
+   * Get a value to a key from the key-value store. Reads have their own budget and do not wait for
+   * the server monitor, so they are not queued behind the writes.
    * @param key key to be inserted
    * @return value with respect to the key in the key-value store
+   * @throws ServerOverloadedException if the read budget of the server is exhausted
    * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
    */
   @Override
-  public synchronized  String get(String key) throws RemoteException {
-    if (keyValueStore.containsKey(key))
-      return keyValueStore.get(key);
-    return "No entry exist for they key - "+key;
+  public String get(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitRead();
+    try {
+      String value = keyValueStore.get(key);
+      if (value == null)
+        return "No entry exist for they key - "+key;
+      return resolve(value);
+    } catch (IOException e) {
+      return "Error occurred while reading large value for key - "+key;
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
   }
 
   @Override
-  public Boolean containsKey(String key) throws RemoteException, InterruptedException {
-    return keyValueStore.containsKey(key);
+  public Boolean containsKey(String key)
+      throws ServerOverloadedException, RemoteException, InterruptedException {
+    long admittedAt = admissionController.admitRead();
+    try {
+      return keyValueStore.containsKey(key);
+    } finally {
+      admissionController.completeRead(admittedAt);
+    }
+  }
+
+  @Override
+  public String addAcceptor(int nodeId) throws RemoteException, InterruptedException {
+    return proposeMembershipChange("ADD_ACCEPTOR", nodeId);
+  }
+
+  @Override
+  public String removeAcceptor(int nodeId) throws RemoteException, InterruptedException {
+    return proposeMembershipChange("REMOVE_ACCEPTOR", nodeId);
+  }
+
+  @Override
+  public String addReadReplica(int nodeId) throws RemoteException, InterruptedException {
+    return proposeMembershipChange("ADD_REPLICA", nodeId);
+  }
+
+  @Override
+  public String removeReadReplica(int nodeId) throws RemoteException, InterruptedException {
+    return proposeMembershipChange("REMOVE_REPLICA", nodeId);
   }
 
   /**
-   * Propose an operation to be applied.
+   * Propose a membership change through Paxos.
+   * @param type type of the membership change
+   * @param nodeId node the change applies to
+   * @return response if the change is successfully applied
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  private String proposeMembershipChange(String type, int nodeId)
+      throws RemoteException, InterruptedException {
+    if (changeMembership(type, nodeId))
+      return type + " operation successful for node - " + nodeId;
+    else
+      return "Error occurred during " + type + " operation for node - " + nodeId;
+  }
+
+  /**
+   * Propose a membership change through Paxos and report whether it was applied.
+   * @param type type of the membership change
+   * @param nodeId node the change applies to
+   * @return true if the change is committed and applied by this server
+   * @throws RemoteException if any issue in connecting to server
+   * @throws InterruptedException if sleep is interrupted
+   */
+  boolean changeMembership(String type, int nodeId) throws RemoteException, InterruptedException {
+    return proposeOperation(new Operation(type, MEMBERSHIP_KEY, String.valueOf(nodeId)));
+  }
+
+  /**
+   * Propose an operation to be applied. If the proposal is not committed, it is retried with a new
+   * proposal ID after an exponential backoff with jitter. Only the rounds hold the server monitor,
+   * the backoff does not, so the other proposals and the learns of this server go on meanwhile.
    * @param operation The operation to be proposed.
+   * @return true if the operation is committed and applied successfully
    * @throws RemoteException If a remote error occurs.
+   * @throws InterruptedException if sleep is interrupted
+   */
+  private boolean proposeOperation(Operation operation) throws RemoteException, InterruptedException {
+    long backoff = INITIAL_BACKOFF_MS;
+    for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+      String proposalId;
+      synchronized (this) {
+        isSuccess = false;
+        proposalId = generateProposalId();
+        propose(proposalId, operation);
+        if (isCommitted(proposalId))
+          return isSuccess;
+      }
+      if (attempt < MAX_RETRIES) {
+        log("Proposal " + proposalId + " not committed, retrying in " + backoff + " ms");
+        clock.sleep(backoff + (long) (random.nextDouble() * backoff));
+        backoff *= 2;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check if this server has learned the given proposal.
+   * @param proposalId The unique identifier for the proposal.
+   * @return true if the proposal is committed
    */
-  private void proposeOperation(Operation operation) throws RemoteException, InterruptedException {
-    String proposalId = generateProposalId();
-    propose(proposalId, operation);
+  private boolean isCommitted(String proposalId) {
+    Pair<Integer, Boolean> learnerPair = this.learnerBook.get(proposalId);
+    return learnerPair != null && learnerPair.getValue();
   }
 
   /**
@@ -134,6 +608,20 @@ public class Server extends UnicastRemoteObject implements ProposerInterface, Ac
     return false;
   }
 
+  /**
+   * Answer a heartbeat of the failure detector. Not synchronized, so a server that is busy
+   * proposing is not mistaken for a down one.
+   * @return true if the server is up, null if it is down
+   * @throws RemoteException if there's any issue with RMI
+   */
+  @Override
+  public Boolean heartbeat() throws RemoteException {
+    if(checkAcceptorStatus()) {
+      return null;
+    }
+    return true;
+  }
+
   /**
    * Process the prepare operation of a acceptor. Receive the prepare request from the acceptor
    * and accept / reject it based on the if there's any latest operation in it's log.
@@ -165,18 +653,28 @@ public class Server extends UnicastRemoteObject implements ProposerInterface, Ac
    * @throws RemoteException if issue arises with RMI
    */
   @Override
-  public synchronized void accept(String proposalId, Operation proposalValue) throws RemoteException {
+  public synchronized Set<Integer> accept(String proposalId, Operation proposalValue) throws RemoteException {
     if(checkAcceptorStatus()) {
-      return;
+      return null;
     }
     // check in the log for any highest value.
     if(this.previousEntries.containsKey(proposalValue.key)) {
       if(Long.parseLong(this.previousEntries.get(proposalValue.key).getKey().split(":")[1]) <= Long.parseLong(proposalId.split(":")[1])) {
-        for(LearnerInterface learner : this.learners) {
-          learner.learn(proposalId, proposalValue);
+        Set<Integer> learnedBy = new HashSet<>();
+        // iterate over a copy, learning a membership change can modify the learners
+        for(Map.Entry<Integer, LearnerInterface> learner : new ArrayList<>(this.learners.entrySet())) {
+          try {
+            learner.getValue().learn(proposalId, proposalValue);
+            learnedBy.add(learner.getKey());
+          } catch (RemoteException e) {
+            // one unreachable learner must not keep the others from learning
+            log("Learn failed on learner " + learner.getKey() + " with message " + e.getMessage());
+          }
         }
+        return learnedBy;
       }
     }
+    return null;
   }
 
   /**
@@ -192,29 +690,147 @@ public class Server extends UnicastRemoteObject implements ProposerInterface, Ac
   public synchronized void propose(String proposalId, Operation proposalValue)
       throws RemoteException, InterruptedException {
     // Implement Paxos propose logic here
+    // the round runs against the configuration seen when it starts, without the suspected acceptors
+    Map<Integer, AcceptorInterface> configuration = new HashMap<>(this.acceptors);
+    int acceptorCount = configuration.size();
+    int quorum = phase1QuorumSize(acceptorCount);
+    List<Integer> roundAcceptors = new ArrayList<>();
+    for(Integer acceptorId : configuration.keySet()) {
+      if(!isSuspected(acceptorId))
+        roundAcceptors.add(acceptorId);
+    }
+    if(roundAcceptors.size() < quorum) {
+      log("Only " + roundAcceptors.size() + " acceptors are healthy, skipping proposal " + proposalId);
+      return;
+    }
     List<Boolean> prepareResponse = new ArrayList<>();
-    for(AcceptorInterface acceptor : this.acceptors) {
-      Boolean res = acceptor.prepare(proposalId, proposalValue);
+    for(Integer acceptorId : roundAcceptors) {
+      long start = clock.nanoTime();
+      Boolean res;
+      try {
+        res = configuration.get(acceptorId).prepare(proposalId, proposalValue);
+        if(res != null)
+          recordLatency(acceptorId, clock.nanoTime() - start);
+      } catch (RemoteException e) {
+        // an unreachable acceptor counts like a down one
+        res = null;
+        recordLatency(acceptorId, FAILED_CALL_PENALTY_NANOS);
+      }
       prepareResponse.add(res);
     }
     int majorityCount = 0;
+    List<Integer> promised = new ArrayList<>();
 
     // check for rejections and majority
-    for(int i=0; i<5; i++) {
+    for(int i=0; i<roundAcceptors.size(); i++) {
       if(prepareResponse.get(i) != null) {
-        if(prepareResponse.get(i))
+        if(prepareResponse.get(i)) {
           majorityCount += 1;
+          promised.add(roundAcceptors.get(i));
+        }
       }
     }
     // if majority, accept the propsed value
-    if(majorityCount >= Math.ceil(acceptors.length/DIV)) {
-      for(int i=0; i<5; i++) {
-        if(prepareResponse.get(i) != null)
-          this.acceptors[i].accept(proposalId, proposalValue);
+    if(majorityCount >= quorum) {
+      if(thriftyAccept) {
+        acceptThrifty(proposalId, proposalValue, configuration, promised, phase2QuorumSize(acceptorCount));
+        return;
+      }
+      for(int i=0; i<roundAcceptors.size(); i++) {
+        if(prepareResponse.get(i) != null) {
+          try {
+            configuration.get(roundAcceptors.get(i)).accept(proposalId, proposalValue);
+          } catch (RemoteException e) {
+            log("Accept failed on acceptor " + roundAcceptors.get(i) + " with message " + e.getMessage());
+          }
+        }
       }
     }
   }
 
+  /**
+   * Send accept to the fastest acceptors that promised, one at a time, until the proposal is
+   * delivered: a phase 2 quorum of learners has each learned it from a phase 2 quorum of acceptors,
+   * and no learner that was reached is left short of that. A learner that no acceptor reached, like
+   * a paused node, does not hold the round up, so an outage of a minority does not turn thrifty
+   * accept into a broadcast.
+   * @param proposalId The unique identifier for the proposal.
+   * @param proposalValue The value being proposed.
+   * @param configuration acceptors of the round
+   * @param promised ids of the acceptors that promised the proposal
+   * @param quorum size of the phase 2 quorum
+   */
+  private void acceptThrifty(String proposalId, Operation proposalValue,
+      Map<Integer, AcceptorInterface> configuration, List<Integer> promised, int quorum) {
+    promised.sort(Comparator.comparingDouble(acceptorId -> acceptorLatencies.getOrDefault(acceptorId, 0.0)));
+    Map<Integer, Integer> learnCounts = new HashMap<>();
+    for(int acceptorId : promised) {
+      if(isDelivered(learnCounts, quorum))
+        break;
+      AcceptorInterface acceptor = configuration.get(acceptorId);
+      long start = clock.nanoTime();
+      try {
+        Set<Integer> learnedBy = acceptor.accept(proposalId, proposalValue);
+        if(learnedBy != null) {
+          for(int learnerId : learnedBy)
+            learnCounts.merge(learnerId, 1, Integer::sum);
+        }
+        recordLatency(acceptorId, clock.nanoTime() - start);
+      } catch (RemoteException e) {
+        recordLatency(acceptorId, FAILED_CALL_PENALTY_NANOS);
+        log("Accept failed on acceptor " + acceptorId + " with message " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Check if a proposal has been learned well enough to stop sending accept.
+   * @param learnCounts number of acceptors each learner has learned the proposal from
+   * @param quorum size of the phase 2 quorum
+   * @return true if a quorum of learners committed and every learner reached has committed
+   */
+  private boolean isDelivered(Map<Integer, Integer> learnCounts, int quorum) {
+    int committed = 0;
+    for(int count : learnCounts.values()) {
+      if(count < quorum)
+        return false;
+      committed++;
+    }
+    return committed >= quorum;
+  }
+
+  /**
+   * Update the moving average of the response time of an acceptor.
+   * @param acceptorId id of the acceptor
+   * @param elapsedNanos response time of the last call
+   */
+  private void recordLatency(int acceptorId, long elapsedNanos) {
+    double elapsedMillis = elapsedNanos / 1_000_000.0;
+    acceptorLatencies.merge(acceptorId, elapsedMillis,
+        (average, latest) -> (1 - LATENCY_ALPHA) * average + LATENCY_ALPHA * latest);
+  }
+
+  /**
+   * Get the number of acceptors that have to promise in phase 1. It is sized so that every phase 1
+   * quorum intersects every phase 2 quorum.
+   * @param acceptorCount number of voting acceptors
+   * @return size of the phase 1 quorum
+   */
+  private int phase1QuorumSize(int acceptorCount) {
+    return acceptorCount - phase2QuorumSize(acceptorCount) + 1;
+  }
+
+  /**
+   * Get the number of acceptors that have to accept in phase 2 before a value is learned.
+   * @param acceptorCount number of voting acceptors
+   * @return size of the phase 2 quorum, a majority unless configured otherwise
+   */
+  private int phase2QuorumSize(int acceptorCount) {
+    if(phase2Quorum > 0)
+      return Math.min(phase2Quorum, acceptorCount);
+    return (int) Math.floor(acceptorCount/DIV) + 1;
+  }
+
   /**
    * learn the value that the acceptors pass.
    * @param proposalId The unique identifier for the proposal.
@@ -224,26 +840,54 @@ public class Server extends UnicastRemoteObject implements ProposerInterface, Ac
   @Override
   public synchronized void learn(String proposalId, Operation acceptedValue) throws RemoteException {
     // Implement Paxos learn logic here
-    if(!this.learnerBook.containsKey(proposalId)) {
-      this.learnerBook.put(proposalId, new Pair<>(1, false));
-    } else {
-      Pair<Integer, Boolean> learnerPair = this.learnerBook.get(proposalId);
-      learnerPair.setKey(learnerPair.getKey()+1);
-      if(learnerPair.getKey() >= Math.ceil(acceptors.length/DIV) && !learnerPair.getValue()) {
-        this.isSuccess = executeOperation(acceptedValue);
-        learnerPair.setValue(true);
+    Pair<Integer, Boolean> learnerPair = this.learnerBook.get(proposalId);
+    if(learnerPair == null) {
+      learnerPair = new Pair<>(0, false);
+    }
+    learnerPair.setKey(learnerPair.getKey()+1);
+    if(learnerPair.getKey() >= phase2QuorumSize(acceptors.size()) && !learnerPair.getValue()) {
+      this.isSuccess = executeOperation(acceptedValue);
+      learnerPair.setValue(true);
+      if(isProposer(proposalId)) {
+        publishToReadReplicas(proposalId, acceptedValue);
+      }
+    }
+    this.learnerBook.put(proposalId, learnerPair);
+  }
+
+  /**
+   * Check if this server generated the given proposal.
+   * @param proposalId The unique identifier for the proposal.
+   * @return true if this server is the proposer
+   */
+  private boolean isProposer(String proposalId) {
+    return Integer.parseInt(proposalId.split(":")[0]) == serverId;
+  }
+
+  /**
+   * Send a committed operation to the read replicas. Only the proposer publishes it, so every
+   * replica receives the operation once. A replica that cannot be reached does not fail the write.
+   * @param proposalId The unique identifier for the proposal.
+   * @param committedValue The value that has been committed.
+   */
+  private void publishToReadReplicas(String proposalId, Operation committedValue) {
+    for(Map.Entry<Integer, LearnerInterface> replica : this.readReplicas.entrySet()) {
+      try {
+        replica.getValue().learn(proposalId, committedValue);
+      } catch (RemoteException e) {
+        log("Failed to publish to replica " + replica.getKey() + " with message " + e.getMessage());
       }
-      this.learnerBook.put(proposalId, learnerPair);
     }
   }
 
   /**
-   * Generates a unique proposal ID.
+   * Generates a unique proposal ID. The timestamp is kept increasing, so two proposals of this
+   * server made within the same millisecond do not share an ID.
    * @return A unique proposal ID.
    */
   private String generateProposalId() throws RemoteException {
-    // Placeholder code to generate a unique proposal ID
-    return serverId + ":" + System.currentTimeMillis();
+    lastProposalTime = Math.max(clock.currentTimeMillis(), lastProposalTime + 1);
+    return serverId + ":" + lastProposalTime;
   }
 
   /**
@@ -254,22 +898,81 @@ public class Server extends UnicastRemoteObject implements ProposerInterface, Ac
     if (operation == null) return false;
     switch (operation.type) {
       case "PUT":
-        keyValueStore.put(operation.key, operation.value);
-        System.out.println(System.currentTimeMillis()+" - PUT Operation successfull for Key:Value - " + operation.key + ":" + operation.value);
+        String previous = keyValueStore.put(operation.key, operation.value);
+        if (previous != null && !previous.equals(operation.value))
+          chunkStore.release(previous);
+        log("PUT Operation successfull for Key:Value - " + operation.key + ":" + operation.value);
         return true;
       case "DELETE":
         if(keyValueStore.containsKey(operation.key)) {
-          keyValueStore.remove(operation.key);
-          System.out.println(System.currentTimeMillis()+" - DELETE Operation successful for Key - " + operation.key );
+          chunkStore.release(keyValueStore.remove(operation.key));
+          log("DELETE Operation successful for Key - " + operation.key );
           return true;
         } else {
-          System.out.println(System.currentTimeMillis()+" - DELETE Operation Failed for Key - " + operation.key );
+          log("DELETE Operation Failed for Key - " + operation.key );
           return false;
         }
+      case "ADD_ACCEPTOR":
+      case "REMOVE_ACCEPTOR":
+      case "ADD_REPLICA":
+      case "REMOVE_REPLICA":
+        return applyMembershipChange(operation.type, Integer.parseInt(operation.value));
       default:
         throw new IllegalArgumentException("Unknown operation type: " + operation.type);
     }
   }
+
+  /**
+   * Apply a committed membership change to the configuration of this server.
+   * @param type type of the membership change
+   * @param nodeId node the change applies to
+   * @return true if the change is applied
+   */
+  private boolean applyMembershipChange(String type, int nodeId) {
+    switch (type) {
+      case "ADD_ACCEPTOR":
+        if(nodeDirectory == null || nodeDirectory.getAcceptor(nodeId) == null) {
+          log("ADD_ACCEPTOR Operation Failed for unknown node - " + nodeId);
+          return false;
+        }
+        this.acceptors.put(nodeId, nodeDirectory.getAcceptor(nodeId));
+        this.learners.put(nodeId, nodeDirectory.getLearner(nodeId));
+        break;
+      case "REMOVE_ACCEPTOR":
+        if(nodeId == serverId) {
+          // a removed server stops taking part in the consensus
+          this.acceptors.clear();
+          this.learners.clear();
+          this.readReplicas.clear();
+        } else {
+          this.acceptors.remove(nodeId);
+          this.learners.remove(nodeId);
+        }
+        break;
+      case "ADD_REPLICA":
+        if(nodeDirectory == null || nodeDirectory.getLearner(nodeId) == null) {
+          log("ADD_REPLICA Operation Failed for unknown node - " + nodeId);
+          return false;
+        }
+        this.readReplicas.put(nodeId, nodeDirectory.getLearner(nodeId));
+        break;
+      case "REMOVE_REPLICA":
+        this.readReplicas.remove(nodeId);
+        break;
+      default:
+        return false;
+    }
+    log("" + type + " Operation successful for node - " + nodeId + " on server " + serverId);
+    return true;
+  }
+  /**
+   * Get the id of this server.
+   * @return id of the server
+   */
+  public int getServerId() {
+    return serverId;
+  }
+
   /**
    * Set an Server as down
    */
@@ -283,7 +986,8 @@ public class Server extends UnicastRemoteObject implements ProposerInterface, Ac
 /**
  * class representing an operation on the key-value store.
  */
-class Operation {
+class Operation implements Serializable {
+  private static final long serialVersionUID = 1L;
   String type;
   String key;
   String value;
@@ -0,0 +1,30 @@
+package project4.RMI.server;
+
+/**
+ * Thrown when a node rejects a request because its read or write budget is exhausted. The request
+ * was not applied and can be retried after the suggested delay, on this node or on another one.
+ * It is not a RemoteException, so RMI passes it to the client as it is instead of wrapping it in a
+ * ServerException.
+ */
+public class ServerOverloadedException extends Exception {
+  private static final long serialVersionUID = 1L;
+  private final long retryAfterMillis;
+
+  /**
+   * Constructs a ServerOverloadedException.
+   * @param message detail message
+   * @param retryAfterMillis suggested delay before retrying the request
+   */
+  public ServerOverloadedException(String message, long retryAfterMillis) {
+    super(message);
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  /**
+   * Get the suggested delay before retrying the request.
+   * @return delay in milliseconds
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
@@ -0,0 +1,83 @@
+package project4.RMI.server;
+
+import java.rmi.RemoteException;
+import java.util.Set;
+
+/**
+ * The view one simulated node has of another. Every call goes through the simulated network on the
+ * way to the target server and again for the reply, so a call can be delayed or lost in either
+ * direction.
+ */
+public class SimulatedLink implements AcceptorInterface, LearnerInterface, ChunkStoreInterface {
+  private final SimulatedNetwork network;
+  private final int from;
+  private final int to;
+  private final Server target;
+
+  /**
+   * Constructor to create a SimulatedLink instance.
+   * @param network simulated network the messages go through
+   * @param from id of the calling node
+   * @param to id of the target node
+   * @param target server the calls are delivered to
+   */
+  public SimulatedLink(SimulatedNetwork network, int from, int to, Server target) {
+    this.network = network;
+    this.from = from;
+    this.to = to;
+    this.target = target;
+  }
+
+  @Override
+  public Boolean prepare(String proposalId, Operation oper) throws RemoteException {
+    network.deliver(from, to);
+    Boolean response = target.prepare(proposalId, oper);
+    network.deliver(to, from);
+    return response;
+  }
+
+  @Override
+  public Set<Integer> accept(String proposalId, Operation proposalValue) throws RemoteException {
+    network.deliver(from, to);
+    Set<Integer> response = target.accept(proposalId, proposalValue);
+    network.deliver(to, from);
+    return response;
+  }
+
+  @Override
+  public Boolean heartbeat() throws RemoteException {
+    network.deliver(from, to);
+    Boolean response = target.heartbeat();
+    network.deliver(to, from);
+    return response;
+  }
+
+  @Override
+  public void learn(String proposalId, Operation acceptedValue) throws RemoteException {
+    network.deliver(from, to);
+    target.learn(proposalId, acceptedValue);
+    network.deliver(to, from);
+  }
+
+  @Override
+  public void storeChunk(String valueId, int index, byte[] chunk) throws RemoteException {
+    network.deliver(from, to);
+    target.storeChunk(valueId, index, chunk);
+    network.deliver(to, from);
+  }
+
+  @Override
+  public byte[] fetchChunk(String valueId, int index) throws RemoteException {
+    network.deliver(from, to);
+    byte[] chunk = target.fetchChunk(valueId, index);
+    network.deliver(to, from);
+    return chunk;
+  }
+
+  @Override
+  public void releaseValue(String reference) throws RemoteException {
+    network.deliver(from, to);
+    target.releaseValue(reference);
+    network.deliver(to, from);
+  }
+}
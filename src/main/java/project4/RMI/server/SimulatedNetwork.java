@@ -0,0 +1,184 @@
+package project4.RMI.server;
+
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * In-process network used by the cluster simulator. Every message between two nodes advances a
+ * virtual clock by the latency of the link, drawn from a seeded random source, so a run with the
+ * same seed always delivers, delays and drops the same messages. Links can lose messages, nodes can
+ * be partitioned from each other and paused. A message that is lost costs the sender a timeout and
+ * surfaces as a RemoteException, like an unreachable RMI endpoint.
+ */
+public class SimulatedNetwork implements Clock {
+  private final Random random;
+  private final Map<String, LinkConfig> links = new HashMap<>();
+  private final Map<Integer, Long> pausedUntil = new HashMap<>();
+  private final Set<String> cutLinks = new HashSet<>();
+  private final LinkConfig defaultLink;
+  private final long timeoutNanos;
+  private long nowNanos = 0;
+  private long messages = 0;
+  private long droppedMessages = 0;
+
+  /**
+   * Constructor to create a SimulatedNetwork instance.
+   * @param seed seed of the random source
+   * @param defaultLink configuration of the links that are not configured explicitly
+   * @param timeoutMillis time a sender waits before a lost message fails
+   */
+  public SimulatedNetwork(long seed, LinkConfig defaultLink, long timeoutMillis) {
+    this.random = new Random(seed);
+    this.defaultLink = defaultLink;
+    this.timeoutNanos = timeoutMillis * 1_000_000L;
+  }
+
+  /**
+   * Configure the link from one node to another.
+   * @param from id of the sending node
+   * @param to id of the receiving node
+   * @param config configuration of the link
+   */
+  public void setLink(int from, int to, LinkConfig config) {
+    links.put(from + "->" + to, config);
+  }
+
+  /**
+   * Cut the links between the given nodes and all the other nodes.
+   * @param nodeIds ids of the nodes on one side of the partition
+   * @param nodeCount number of nodes in the cluster
+   */
+  public void partition(Set<Integer> nodeIds, int nodeCount) {
+    for (int from = 0; from < nodeCount; from++) {
+      for (int to = 0; to < nodeCount; to++) {
+        if (nodeIds.contains(from) != nodeIds.contains(to))
+          cutLinks.add(from + "->" + to);
+      }
+    }
+  }
+
+  /**
+   * Restore all the links cut by partitions.
+   */
+  public void heal() {
+    cutLinks.clear();
+  }
+
+  /**
+   * Pause a node, it neither answers nor sends any message until the pause is over.
+   * @param nodeId id of the node
+   * @param durationMillis length of the pause
+   */
+  public void pause(int nodeId, long durationMillis) {
+    pausedUntil.put(nodeId, nowNanos + durationMillis * 1_000_000L);
+  }
+
+  /**
+   * Check if a node is paused.
+   * @param nodeId id of the node
+   * @return true if the node is paused
+   */
+  public boolean isPaused(int nodeId) {
+    Long until = pausedUntil.get(nodeId);
+    return until != null && until > nowNanos;
+  }
+
+  /**
+   * Deliver a message from one node to another, advancing the virtual clock by the latency of the
+   * link. Messages of a node to itself are local calls and are always delivered at once.
+   * @param from id of the sending node
+   * @param to id of the receiving node
+   * @throws RemoteException if the message is lost, the link is cut or either node is paused
+   */
+  void deliver(int from, int to) throws RemoteException {
+    if (from == to)
+      return;
+    messages++;
+    LinkConfig link = links.getOrDefault(from + "->" + to, defaultLink);
+    if (cutLinks.contains(from + "->" + to) || isPaused(from) || isPaused(to) || random.nextDouble() < link.lossRate) {
+      droppedMessages++;
+      nowNanos += timeoutNanos;
+      throw new RemoteException("Message from " + from + " to " + to + " was lost");
+    }
+    double latencyMillis = link.latencyMillis + (2 * random.nextDouble() - 1) * link.jitterMillis;
+    nowNanos += (long) (Math.max(latencyMillis, 0.0) * 1_000_000L);
+  }
+
+  /**
+   * Advance the virtual clock without sending a message.
+   * @param millis time to advance
+   */
+  void advance(long millis) {
+    nowNanos += millis * 1_000_000L;
+  }
+
+  /**
+   * Run messages that go on alongside the workload, such as heartbeats. Their messages can be lost
+   * like any other, but they do not advance the virtual clock of the workload.
+   * @param task messages to be sent
+   */
+  void inBackground(Runnable task) {
+    long startNanos = nowNanos;
+    try {
+      task.run();
+    } finally {
+      nowNanos = startNanos;
+    }
+  }
+
+  /**
+   * Get the number of messages sent between different nodes.
+   * @return number of messages
+   */
+  public long getMessages() {
+    return messages;
+  }
+
+  /**
+   * Get the number of messages that were lost.
+   * @return number of lost messages
+   */
+  public long getDroppedMessages() {
+    return droppedMessages;
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return nowNanos / 1_000_000L;
+  }
+
+  @Override
+  public long nanoTime() {
+    return nowNanos;
+  }
+
+  @Override
+  public void sleep(long millis) {
+    advance(millis);
+  }
+
+  /**
+   * Latency, jitter and loss of a link.
+   */
+  public static class LinkConfig {
+    final double latencyMillis;
+    final double jitterMillis;
+    final double lossRate;
+
+    /**
+     * Constructor to create a LinkConfig instance.
+     * @param latencyMillis mean one way latency
+     * @param jitterMillis largest deviation from the mean latency
+     * @param lossRate probability that a message is lost
+     */
+    public LinkConfig(double latencyMillis, double jitterMillis, double lossRate) {
+      this.latencyMillis = latencyMillis;
+      this.jitterMillis = jitterMillis;
+      this.lossRate = lossRate;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package project4.RMI.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * A ValueCodec compresses large values before they are split into chunks and decompresses them
+ * when the chunks are read back. All the nodes of a cluster and its clients must use the same codec,
+ * so the servers hand their codec to the read replicas and the clients.
+ */
+public interface ValueCodec extends Serializable {
+
+  /**
+   * Wrap a stream so that the data written to it is encoded.
+   * @param out stream that receives the encoded data
+   * @return stream to write the raw data to
+   * @throws IOException if the stream can not be created
+   */
+  OutputStream encode(OutputStream out) throws IOException;
+
+  /**
+   * Wrap a stream so that the data read from it is decoded.
+   * @param in stream of encoded data
+   * @return stream to read the raw data from
+   * @throws IOException if the stream can not be created
+   */
+  InputStream decode(InputStream in) throws IOException;
+}